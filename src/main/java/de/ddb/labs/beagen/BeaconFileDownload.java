@@ -0,0 +1,316 @@
+/* 
+ * Copyright 2019-2026 Michael Büchner, Deutsche Digitale Bibliothek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.ddb.labs.beagen;
+
+import de.ddb.labs.beagen.backend.BeaconFile;
+import io.javalin.http.Context;
+import io.javalin.http.Header;
+import io.javalin.http.HttpStatus;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Sends Beacon files over HTTP. The representation is chosen by
+ * Accept-Encoding from the stored variants. Validators are taken from the
+ * stored metadata, so conditional requests are answered without opening the
+ * content, and single byte ranges are supported to resume downloads.
+ *
+ * @author Michael Büchner
+ */
+public class BeaconFileDownload {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private BeaconFileDownload() {
+    }
+
+    /**
+     * Send a Beacon file. Clients accepting Brotli get the stored Brotli
+     * variant, clients accepting gzip get the stored gzip content as it is,
+     * everyone else gets it decompressed.
+     *
+     * @param ctx Context
+     * @param bfile Beacon file
+     * @throws IOException
+     */
+    public static void send(Context ctx, BeaconFile bfile) throws IOException {
+        final String acceptEncoding = ctx.header(Header.ACCEPT_ENCODING);
+
+        String encoding = null;
+        long length = -1;
+        if (accepts(acceptEncoding, "br")) {
+            length = bfile.getBrotliBeaconFileLength();
+            encoding = length < 0 ? null : "br";
+        }
+        if (encoding == null && accepts(acceptEncoding, "gzip")) {
+            length = bfile.getCompressedBeaconFileLength();
+            encoding = length < 0 ? null : "gzip";
+        }
+        if (encoding == null) {
+            length = bfile.getBeaconFileLength();
+        }
+
+        final String etag = getEtag(bfile, encoding);
+        // HTTP dates have a resolution of seconds
+        final long lastModified = bfile.getCreated().getTime() / 1000 * 1000;
+
+        ctx.header(Header.VARY, Header.ACCEPT_ENCODING);
+        ctx.header(Header.ETAG, etag);
+        ctx.header(Header.LAST_MODIFIED, formatDate(lastModified));
+
+        if (isNotModified(ctx, etag, lastModified)) {
+            ctx.status(HttpStatus.NOT_MODIFIED);
+            return;
+        }
+
+        if (encoding != null) {
+            // Javalin does not compress responses with a content encoding
+            ctx.header(Header.CONTENT_ENCODING, encoding);
+        } else {
+            // the identity body must not be compressed by Javalin, its
+            // Content-Length, Content-Range and ETag describe the identity
+            ctx.disableCompression();
+        }
+
+        if (length >= 0) {
+            ctx.header(Header.ACCEPT_RANGES, "bytes");
+            final String range = ctx.header(Header.RANGE);
+            if (range != null && isRangeValid(ctx, etag, lastModified)) {
+                final long[] bounds = parseRange(range, length);
+                if (bounds == null) {
+                    // syntactically invalid or more than one range: ignored
+                } else if (bounds.length == 0) {
+                    ctx.header(Header.CONTENT_RANGE, "bytes */" + length);
+                    ctx.status(HttpStatus.RANGE_NOT_SATISFIABLE);
+                    return;
+                } else {
+                    final InputStream is = open(bfile, encoding);
+                    try {
+                        skipFully(is, bounds[0]);
+                    } catch (IOException e) {
+                        is.close();
+                        throw e;
+                    }
+                    ctx.status(HttpStatus.PARTIAL_CONTENT);
+                    ctx.header(Header.CONTENT_RANGE, "bytes " + bounds[0] + "-" + bounds[1] + "/" + length);
+                    ctx.header(Header.CONTENT_LENGTH, Long.toString(bounds[1] - bounds[0] + 1));
+                    ctx.result(new LimitedInputStream(is, bounds[1] - bounds[0] + 1));
+                    return;
+                }
+            }
+            ctx.header(Header.CONTENT_LENGTH, Long.toString(length));
+        }
+
+        ctx.result(open(bfile, encoding));
+    }
+
+    private static InputStream open(BeaconFile bfile, String encoding) throws IOException {
+        if ("br".equals(encoding)) {
+            return bfile.getBrotliBeaconFile();
+        } else if ("gzip".equals(encoding)) {
+            return bfile.getCompressedBeaconFile();
+        }
+        return bfile.getBeaconFile();
+    }
+
+    /**
+     * Strong ETag of a representation of a Beacon file. The lines of a
+     * Beacon file never change, so its ID and fingerprint identify them, and
+     * the fingerprint of the header identifies the rendered header.
+     */
+    private static String getEtag(BeaconFile bfile, String encoding) throws IOException {
+        final StringBuilder sb = new StringBuilder("\"");
+        sb.append(bfile.getId());
+        if (bfile.getFingerprint() != null) {
+            sb.append('-').append(bfile.getFingerprint(), 0, 32);
+        }
+        sb.append('-').append(bfile.getHeaderFingerprint(), 0, 16);
+        if (encoding != null) {
+            sb.append('-').append(encoding);
+        }
+        return sb.append('"').toString();
+    }
+
+    private static boolean isNotModified(Context ctx, String etag, long lastModified) {
+        final String ifNoneMatch = ctx.header(Header.IF_NONE_MATCH);
+        if (ifNoneMatch != null) {
+            for (String tag : ifNoneMatch.split(",")) {
+                tag = tag.trim();
+                if (tag.startsWith("W/")) {
+                    tag = tag.substring(2);
+                }
+                if (tag.equals("*") || tag.equals(etag)) {
+                    return true;
+                }
+            }
+            // If-Modified-Since is ignored if If-None-Match is present
+            return false;
+        }
+        final long ifModifiedSince = parseDate(ctx.header(Header.IF_MODIFIED_SINCE));
+        return ifModifiedSince >= 0 && lastModified <= ifModifiedSince;
+    }
+
+    /**
+     * A Range request is only answered with a range, if If-Range matches the
+     * current representation or is not present.
+     */
+    private static boolean isRangeValid(Context ctx, String etag, long lastModified) {
+        final String ifRange = ctx.header(Header.IF_RANGE);
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"")) {
+            return ifRange.equals(etag);
+        }
+        return parseDate(ifRange) == lastModified;
+    }
+
+    /**
+     * Parse a Range header with a single byte range.
+     *
+     * @return First and last byte, an empty array if the range cannot be
+     * satisfied, or null if the header is invalid or has more than one range
+     */
+    private static long[] parseRange(String range, long length) {
+        if (!range.startsWith("bytes=") || range.indexOf(',') >= 0) {
+            return null;
+        }
+        final String spec = range.substring(6).trim();
+        final int dash = spec.indexOf('-');
+        if (dash < 0) {
+            return null;
+        }
+        try {
+            final String first = spec.substring(0, dash).trim();
+            final String last = spec.substring(dash + 1).trim();
+            if (first.isEmpty()) {
+                // suffix range: last n bytes
+                final long n = Long.parseLong(last);
+                if (n <= 0 || length == 0) {
+                    return new long[0];
+                }
+                return new long[]{Math.max(0, length - n), length - 1};
+            }
+            final long start = Long.parseLong(first);
+            long end = length - 1;
+            if (!last.isEmpty()) {
+                final long l = Long.parseLong(last);
+                if (l < start) {
+                    return null;
+                }
+                end = Math.min(l, end);
+            }
+            if (start >= length) {
+                return new long[0];
+            }
+            return new long[]{start, end};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static void skipFully(InputStream is, long n) throws IOException {
+        final byte[] buffer = new byte[BUFFER_SIZE];
+        while (n > 0) {
+            final int read = is.read(buffer, 0, (int) Math.min(buffer.length, n));
+            if (read < 0) {
+                throw new IOException("Beacon file ended before requested range");
+            }
+            n -= read;
+        }
+    }
+
+    private static String formatDate(long millis) {
+        return DateTimeFormatter.RFC_1123_DATE_TIME.format(ZonedDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneOffset.UTC));
+    }
+
+    /**
+     * @return Milliseconds of a HTTP date, or -1 if it is missing or invalid
+     */
+    private static long parseDate(String date) {
+        if (date == null) {
+            return -1;
+        }
+        try {
+            return ZonedDateTime.parse(date.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return -1;
+        }
+    }
+
+    private static boolean accepts(String acceptEncoding, String contentEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String encoding : acceptEncoding.split(",")) {
+            final String[] parts = encoding.split(";");
+            if (!parts[0].trim().equalsIgnoreCase(contentEncoding)) {
+                continue;
+            }
+            for (int i = 1; i < parts.length; ++i) {
+                final String param = parts[i].trim();
+                if (param.startsWith("q=") && param.substring(2).trim().matches("0(\\.0*)?")) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Stream which ends after a count of bytes
+     */
+    private static class LimitedInputStream extends FilterInputStream {
+
+        private long remaining;
+
+        LimitedInputStream(InputStream in, long limit) {
+            super(in);
+            this.remaining = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            final int b = super.read();
+            if (b >= 0) {
+                remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            final int n = super.read(b, off, (int) Math.min(len, remaining));
+            if (n > 0) {
+                remaining -= n;
+            }
+            return n;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/* 
+ * Copyright 2019-2026 Michael Büchner, Deutsche Digitale Bibliothek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.ddb.labs.beagen;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import de.ddb.labs.beagen.backend.BeaconFileController;
+import de.ddb.labs.beagen.backend.BeaconFileInfo;
+import de.ddb.labs.beagen.backend.data.SECTOR;
+import de.ddb.labs.beagen.backend.data.TYPE;
+import de.ddb.labs.beagen.backend.helper.Configuration;
+import io.javalin.http.BadRequestResponse;
+import io.javalin.http.ContentType;
+import io.javalin.http.Context;
+import io.javalin.http.Header;
+import java.io.IOException;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Sends the history of Beacon files of a type and sector as JSON array, one
+ * page at a time. The next page is addressed by the creation date and ID of
+ * the last Beacon file of a page and linked in the Link header.
+ *
+ * @author Michael Büchner
+ */
+public class BeaconFileList {
+
+    private static final String BEAGEN_BASEURL = "beagen.baseurl";
+    // default and maximum count of Beacon files per page
+    private static final String BEAGEN_LIST_LIMIT = "beagen.list.limit";
+    private static final String API_LIST_METHODE = "/list";
+    private static final ObjectWriter WRITER = new ObjectMapper()
+            .writerFor(BeaconFileInfo.class)
+            .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+
+    private BeaconFileList() {
+    }
+
+    /**
+     * Send one page of the history of Beacon files. The query parameter
+     * <code>limit</code> is the count of Beacon files per page and
+     * <code>after</code> the cursor from the Link header of the previous
+     * page.
+     *
+     * @param ctx Context
+     * @param type Type
+     * @param sector Sector
+     * @throws IOException
+     */
+    public static void send(Context ctx, TYPE type, SECTOR sector) throws IOException {
+        final int maxLimit = Configuration.get().getValueAsInt(BEAGEN_LIST_LIMIT, 1000);
+        int limit = maxLimit;
+        if (ctx.queryParam("limit") != null) {
+            try {
+                limit = Integer.parseInt(ctx.queryParam("limit"));
+            } catch (NumberFormatException e) {
+                limit = 0;
+            }
+            if (limit < 1 || limit > maxLimit) {
+                throw new BadRequestResponse("Kein gültiges Limit (1 bis " + maxLimit + ")");
+            }
+        }
+
+        Date afterCreated = null;
+        long afterId = 0;
+        if (ctx.queryParam("after") != null) {
+            final String after = ctx.queryParam("after");
+            try {
+                afterCreated = new Date(Long.parseLong(after.substring(0, after.indexOf('-'))));
+                afterId = Long.parseLong(after.substring(after.indexOf('-') + 1));
+            } catch (NumberFormatException | IndexOutOfBoundsException e) {
+                throw new BadRequestResponse("Kein gültiger Cursor");
+            }
+        }
+
+        // one more than requested tells if there is a next page
+        final List<BeaconFileInfo> page = BeaconFileController.getBeaconFileInfoPage(type, sector, afterCreated, afterId, limit + 1);
+
+        final String link = Configuration.get().getValue(BEAGEN_BASEURL) + API_LIST_METHODE
+                + "?type=" + type.name().toLowerCase()
+                + "&sector=" + sector.name().toLowerCase()
+                + "&limit=" + limit;
+        if (page.size() > limit) {
+            final BeaconFileInfo last = page.get(limit - 1);
+            ctx.header(Header.LINK, "<" + link + ">; rel=\"first\", <" + link + "&after=" + last.getCreated().getTime() + "-" + last.getId() + ">; rel=\"next\"");
+        } else {
+            ctx.header(Header.LINK, "<" + link + ">; rel=\"first\"");
+        }
+
+        ctx.contentType(ContentType.APPLICATION_JSON);
+        try (JsonGenerator generator = WRITER.createGenerator(ctx.outputStream())) {
+            generator.writeStartArray();
+            for (int i = 0; i < Math.min(limit, page.size()); ++i) {
+                WRITER.writeValue(generator, page.get(i));
+            }
+            generator.writeEndArray();
+        }
+    }
+}
@@ -17,18 +17,29 @@ package de.ddb.labs.beagen;
 
 import de.ddb.labs.beagen.backend.BeaconFile;
 import de.ddb.labs.beagen.backend.BeaconFileController;
+import de.ddb.labs.beagen.backend.BeaconFileInfo;
+import de.ddb.labs.beagen.backend.BeaconHeader;
+import de.ddb.labs.beagen.backend.LatestBeaconFiles;
+import de.ddb.labs.beagen.backend.LookupIndexes;
 import de.ddb.labs.beagen.backend.helper.Configuration;
+import de.ddb.labs.beagen.backend.helper.DatabaseBusyException;
 import de.ddb.labs.beagen.backend.helper.EntityManagerUtil;
+import de.ddb.labs.beagen.backend.helper.LookupIndex;
 import de.ddb.labs.beagen.backend.jobs.BeaconJob;
+import de.ddb.labs.beagen.backend.jobs.MaintenanceJob;
 import de.ddb.labs.beagen.backend.data.SECTOR;
 import de.ddb.labs.beagen.backend.data.TYPE;
 import io.javalin.Javalin;
 import io.javalin.http.BadRequestResponse;
 import io.javalin.http.Context;
+import io.javalin.http.Header;
 import io.javalin.http.NotFoundResponse;
 import io.javalin.http.HttpStatus;
 import io.javalin.rendering.template.JavalinMustache;
+import java.io.IOException;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import org.quartz.CronScheduleBuilder;
 import org.quartz.JobBuilder;
 import org.quartz.JobDetail;
@@ -49,6 +60,8 @@ public class Main {
     private static final String BEAGEN_PORT = "beagen.port";
     private static final String BEAGEN_PATHPREFIX = "beagen.pathprefix";
     private static final String BEAGEN_CRON = "beagen.cron";
+    private static final String BEAGEN_MAINTENANCE_CRON = "beagen.maintenance.cron";
+    private static final String BEAGEN_SERVER_VIRTUALTHREADS = "beagen.server.virtualthreads";
     // Job Scheduler
     private static Scheduler quartzScheduler;
 
@@ -87,6 +100,9 @@ public class Main {
         System.out.println(BEAGEN_PORT + "=" + Configuration.get().getValue(BEAGEN_PORT));
         System.out.println(BEAGEN_CRON + "=" + Configuration.get().getValue(BEAGEN_CRON));
 
+        // parse header templates with the final base URL
+        BeaconHeader.load();
+
         // start update job
         final JobDetail job = JobBuilder.newJob(BeaconJob.class)
                 .withIdentity("cronjob", "crongroup")
@@ -102,9 +118,25 @@ public class Main {
         quartzScheduler.start();
         quartzScheduler.scheduleJob(job, trigger);
 
+        // start maintenance job
+        final JobDetail maintenanceJob = JobBuilder.newJob(MaintenanceJob.class)
+                .withIdentity("maintenancejob", "crongroup")
+                .build();
+
+        final Trigger maintenanceTrigger = TriggerBuilder.newTrigger()
+                .withIdentity("maintenancetrigger", "crongroup")
+                .withSchedule(CronScheduleBuilder.cronSchedule(Configuration.get().getValue(BEAGEN_MAINTENANCE_CRON)))
+                .build();
+
+        quartzScheduler.scheduleJob(maintenanceJob, maintenanceTrigger);
+
         // start javalin server
+        final boolean virtualThreads = Boolean.parseBoolean(Configuration.get().getValue(BEAGEN_SERVER_VIRTUALTHREADS));
         final Javalin app = Javalin.create(config -> {
             config.fileRenderer(new JavalinMustache());
+            // handle requests on virtual threads, so slow downloads do not
+            // block platform threads; database access is limited by EntityManagerUtil
+            config.useVirtualThreads = virtualThreads;
             config.http.generateEtags = true;
             // Enable Brotli and GZIP compression with moderate levels
             config.http.brotliAndGzipCompression();
@@ -123,13 +155,19 @@ public class Main {
         // set UTF-8 as default charset
         app.before(ctx -> ctx.res().setCharacterEncoding("UTF-8"));
 
+        // all database connections are in use, the client can try again later
+        app.exception(DatabaseBusyException.class, (e, ctx) -> {
+            ctx.header(Header.RETRY_AFTER, String.valueOf(Math.max(1, (e.getTimeout() + 999) / 1000)));
+            ctx.status(HttpStatus.SERVICE_UNAVAILABLE).result("Datenbank ist ausgelastet, bitte später erneut versuchen");
+        });
+
         app.get(Configuration.get().getValue(BEAGEN_PATHPREFIX) + "/item/{id}", ctx -> {
             final Long id = Long.valueOf(ctx.pathParam("id"));
             final BeaconFile bfile = BeaconFileController.getBeaconFile(id);
             if (bfile == null) {
                 throw new NotFoundResponse("Beacon-Datei " + id + " nicht gefunden");
             }
-            ctx.result(bfile.getBeaconFile());
+            BeaconFileDownload.send(ctx, bfile);
         });
 
         app.get(Configuration.get().getValue(BEAGEN_PATHPREFIX) + "/item/{type}/{sector}/latest", ctx -> {
@@ -148,15 +186,45 @@ public class Main {
                 throw new BadRequestResponse("Keine gültige Kultursparte");
             }
 
-            final List<BeaconFile> bfileList = BeaconFileController.getBeaconFiles(type, sector, true);
-            if (!bfileList.isEmpty()) {
-                final BeaconFile bfile = bfileList.get(0);
-                ctx.result(bfile.getBeaconFile());
+            final BeaconFile bfile = LatestBeaconFiles.get(type, sector);
+            if (bfile != null) {
+                BeaconFileDownload.send(ctx, bfile);
             } else {
                 throw new NotFoundResponse("Keine Beacon-Datei gefunden");
             }
         });
 
+        app.get(Configuration.get().getValue(BEAGEN_PATHPREFIX) + "/lookup/{type}/{id}", ctx -> {
+
+            TYPE type;
+            try {
+                type = TYPE.valueOf(ctx.pathParam("type").toUpperCase());
+            } catch (Exception e) {
+                throw new BadRequestResponse("Kein gültiger Typ");
+            }
+
+            final LookupIndex index = LookupIndexes.get(type);
+            if (index == null) {
+                throw new NotFoundResponse("Kein Index für " + type.getName() + " gefunden");
+            }
+
+            final String id = ctx.pathParam("id");
+            final int row = index.find(id);
+            if (row < 0) {
+                throw new NotFoundResponse("GND-ID " + id + " nicht gefunden");
+            }
+
+            final Map<String, Integer> counts = new LinkedHashMap<>();
+            for (SECTOR sector : SECTOR.values()) {
+                counts.put(sector.name().toLowerCase(), index.getCount(row, sector));
+            }
+            final Map<String, Object> result = new LinkedHashMap<>();
+            result.put("id", id);
+            result.put("type", type.name().toLowerCase());
+            result.put("count", counts);
+            ctx.json(result);
+        });
+
         app.get(Configuration.get().getValue(BEAGEN_PATHPREFIX), ctx -> {
             ctx.redirect(Configuration.get().getValue(BEAGEN_PATHPREFIX) + "/list/latest?type=organisation&sector=all", HttpStatus.MOVED_PERMANENTLY);
         });
@@ -167,7 +235,7 @@ public class Main {
         app.get(Configuration.get().getValue(BEAGEN_PATHPREFIX) + "/list/latest", ctx -> deliver(ctx, true));
     }
 
-    private static void deliver(Context ctx, boolean latest) {
+    private static void deliver(Context ctx, boolean latest) throws IOException {
         if (deliverHtml(ctx.req().getHeader("Accept"))) {
             ctx.render("/base.mustache");
             return;
@@ -195,7 +263,12 @@ public class Main {
             throw new BadRequestResponse("Keine gültige Kultursparte");
         }
 
-        ctx.json(BeaconFileController.getBeaconFiles(type, sector, latest));
+        if (latest) {
+            final BeaconFile bfile = LatestBeaconFiles.get(type, sector);
+            ctx.json(bfile == null ? List.of() : List.of(new BeaconFileInfo(bfile.getId(), bfile.getType(), bfile.getSector(), bfile.getCreated(), bfile.getCount())));
+        } else {
+            BeaconFileList.send(ctx, type, sector);
+        }
     }
 
     private static boolean deliverHtml(String accept) {
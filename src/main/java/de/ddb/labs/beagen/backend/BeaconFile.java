@@ -26,6 +26,9 @@ import com.fasterxml.jackson.databind.SerializerProvider;
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import de.ddb.labs.beagen.backend.data.SECTOR.SectorSerializer;
 import de.ddb.labs.beagen.backend.data.TYPE.TypeSerializer;
+import de.ddb.labs.beagen.backend.helper.BeaconDelta;
+import de.ddb.labs.beagen.backend.helper.BlobStore;
+import de.ddb.labs.beagen.backend.helper.BlobStores;
 import de.ddb.labs.beagen.backend.helper.Configuration;
 import lombok.extern.slf4j.Slf4j;
 import java.io.BufferedReader;
@@ -35,15 +38,21 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
+import java.io.SequenceInputStream;
 import java.io.Serializable;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Blob;
+import java.sql.SQLException;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.Arrays;
 import java.util.Date;
-import java.util.TimeZone;
+import java.util.HexFormat;
 import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 import javax.persistence.Basic;
 import javax.persistence.FetchType;
 import javax.persistence.Column;
@@ -58,6 +67,9 @@ import javax.persistence.Index;
 import javax.persistence.Table;
 import javax.persistence.Temporal;
 import javax.persistence.TemporalType;
+import javax.persistence.Transient;
+import org.hibernate.annotations.DynamicUpdate;
+import org.hibernate.engine.jdbc.BlobProxy;
 
 /**
  * Beacon file representation
@@ -66,17 +78,20 @@ import javax.persistence.TemporalType;
  */
 @Slf4j
 @Entity
+@DynamicUpdate
 @Table(name = "BeaconFile", indexes = {
     @Index(name = "idx_beacon_created", columnList = "created"),
     @Index(name = "idx_beacon_type", columnList = "type"),
     @Index(name = "idx_beacon_sector", columnList = "sector"),
-    @Index(name = "idx_beacon_type_sector_created", columnList = "type,sector,created")
+    @Index(name = "idx_beacon_type_sector_created", columnList = "type,sector,created"),
+    @Index(name = "idx_beacon_generation", columnList = "generation")
 })
 public class BeaconFile implements Serializable {
 
     private static final long serialVersionUID = 1L;
     private static final String BEAGEN_BASEURL = "beagen.baseurl";
     private static final String API_ITEM_METHODE = "/item";
+    private static final int BUFFER_SIZE = 64 * 1024;
 
     @Id
     @Basic(optional = false)
@@ -111,11 +126,83 @@ public class BeaconFile implements Serializable {
     @Column(name = "count")
     private int count;
 
-    @Basic(optional = false, fetch = FetchType.LAZY)
+    // gzip compressed content, if it is not in the blob store
+    @Basic(fetch = FetchType.LAZY)
     @Lob
     @Column(name = "content")
     @JsonIgnore
-    private byte[] content;
+    private Blob content;
+
+    // key and size of the gzip compressed content in the blob store
+    @Column(name = "blobhash", length = 64)
+    @JsonIgnore
+    private String blobHash;
+
+    @Column(name = "bloblength")
+    @JsonIgnore
+    private Long blobLength;
+
+    // size of the uncompressed lines without header, null for Beacon files
+    // stored before it was introduced
+    @Column(name = "bodysize")
+    @JsonIgnore
+    private Long bodySize;
+
+    // Brotli compressed Beacon file with rendered header, if it is not in the
+    // blob store
+    @Basic(fetch = FetchType.LAZY)
+    @Lob
+    @Column(name = "brotli")
+    @JsonIgnore
+    private Blob brotli;
+
+    // key and size of the Brotli compressed Beacon file in the blob store
+    @Column(name = "brotlihash", length = 64)
+    @JsonIgnore
+    private String brotliHash;
+
+    @Column(name = "brotlilength")
+    @JsonIgnore
+    private Long brotliLength;
+
+    // SHA-256 of the header the Brotli variant was rendered with, it is not
+    // used if the header changed (e.g. by another base URL)
+    @Column(name = "brotliheader", length = 64)
+    @JsonIgnore
+    private String brotliHeader;
+
+    // ID of the Beacon file the content is a delta of, null if the content is
+    // a full snapshot
+    @Column(name = "base")
+    @JsonIgnore
+    private Long base;
+
+    // count of deltas since the last full snapshot
+    @Column(name = "depth")
+    @JsonIgnore
+    private Integer depth;
+
+    // ID of the generation the Beacon file was published with, null for
+    // Beacon files stored before generations were introduced
+    @Column(name = "generation")
+    @JsonIgnore
+    private Long generation;
+
+    // SHA-256 of the uncompressed lines without comments, null for Beacon
+    // files stored before fingerprints were introduced
+    @Column(name = "fingerprint", length = 64)
+    @JsonIgnore
+    private String fingerprint;
+
+    // size of the content and the Brotli variant in the database, if the
+    // Beacon file was read without them; they are read by ID when needed
+    @Transient
+    @JsonIgnore
+    private Long contentLength;
+
+    @Transient
+    @JsonIgnore
+    private Long brotliContentLength;
 
     public BeaconFile() {
     }
@@ -125,7 +212,7 @@ public class BeaconFile implements Serializable {
         this.sector = sector;
         this.created = new Date(created.getTime());
         this.count = count;
-        this.content = Arrays.copyOf(content, content.length);
+        this.content = BlobProxy.generateProxy(Arrays.copyOf(content, content.length));
     }
 
     public Long getId() {
@@ -156,12 +243,12 @@ public class BeaconFile implements Serializable {
         final ByteArrayOutputStream baos = new ByteArrayOutputStream();
 
         try {
-            baos.write(getBeaconHeader().getBytes(StandardCharsets.UTF_8));
+            baos.write(getBeaconHeaderBytes());
         } catch (IOException e) {
             log.error("Could not serialze Beacon file header. {}", e.getMessage());
         }
 
-        try (final GZIPInputStream stream = new GZIPInputStream(new ByteArrayInputStream(content))) {
+        try (final InputStream stream = getBody()) {
             stream.transferTo(baos);
         } catch (IOException e) {
             log.error("Could not decompress Beacon file from database. {}", e.getMessage(), e);
@@ -176,33 +263,417 @@ public class BeaconFile implements Serializable {
         return baos.toByteArray();
     }
 
+    /**
+     * Get the uncompressed lines of this Beacon file without header. If the
+     * content is a delta, it is applied to the lines of its base file, which
+     * are rebuilt the same way.
+     *
+     * @return Stream of uncompressed lines
+     * @throws IOException
+     */
+    @JsonIgnore
+    public InputStream getBody() throws IOException {
+        final InputStream stored = new GZIPInputStream(getStoredContent(), BUFFER_SIZE);
+
+        if (base == null) {
+            return stored;
+        }
+
+        final BeaconFile baseFile = BeaconFileController.getBeaconFile(base);
+        if (baseFile == null) {
+            stored.close();
+            throw new IOException("Base file " + base + " of Beacon file " + id + " does not exist");
+        }
+        return BeaconDelta.apply(baseFile.getBody(), stored);
+    }
+
+    /**
+     * Get the content as it is stored, from the blob store or the database.
+     *
+     * @return Stream of gzip compressed content
+     * @throws IOException
+     */
+    private InputStream getStoredContent() throws IOException {
+        if (blobHash != null) {
+            final BlobStore store = BlobStores.getInstance();
+            if (store == null) {
+                throw new IOException("Content of Beacon file " + id + " is in the blob store, but no blob store is configured");
+            }
+            return store.get(blobHash);
+        }
+        try {
+            if (content != null) {
+                return content.getBinaryStream();
+            }
+            final InputStream stored = id == null ? null : BeaconFileRepository.getContent(id);
+            if (stored == null) {
+                throw new IOException("Content of Beacon file " + id + " does not exist");
+            }
+            return stored;
+        } catch (SQLException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Get this Beacon file with rendered header. The content is decompressed
+     * while the stream is read, so only the buffers of the streams are held
+     * in memory.
+     *
+     * @return Stream of the uncompressed Beacon file
+     * @throws IOException
+     */
     @JsonIgnore
     public InputStream getBeaconFile() throws IOException {
-        return new ByteArrayInputStream(getContent());
+        final byte[] header = getBeaconHeaderBytes();
+        return new SequenceInputStream(new ByteArrayInputStream(header), getBody());
+    }
+
+    /**
+     * Get this Beacon file with rendered header as gzip stream without
+     * decompressing the stored content. The header is compressed as gzip
+     * member of its own, followed by the stored gzip member, which is valid
+     * gzip with more than one member.
+     *
+     * @return Stream of the gzip compressed Beacon file, or null if the
+     * content is a delta, which has to be rebuilt
+     * @throws IOException
+     */
+    @JsonIgnore
+    public InputStream getCompressedBeaconFile() throws IOException {
+        if (base != null) {
+            return null;
+        }
+        return new SequenceInputStream(new ByteArrayInputStream(getCompressedBeaconHeader()), getStoredContent());
     }
 
-    private String getBeaconHeader() throws IOException {
+    /**
+     * @return Size of the stream of {@link #getCompressedBeaconFile()}, or -1
+     * if the content is a delta
+     * @throws IOException
+     */
+    @JsonIgnore
+    public long getCompressedBeaconFileLength() throws IOException {
+        if (base != null) {
+            return -1;
+        }
+        if (blobHash != null) {
+            return getCompressedBeaconHeader().length + blobLength;
+        }
+        if (content == null) {
+            return contentLength == null ? -1 : getCompressedBeaconHeader().length + contentLength;
+        }
+        try {
+            return getCompressedBeaconHeader().length + content.length();
+        } catch (SQLException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    private byte[] getCompressedBeaconHeader() throws IOException {
+        final ByteArrayOutputStream header = new ByteArrayOutputStream();
+        try (final GZIPOutputStream gzip = new GZIPOutputStream(header)) {
+            gzip.write(getBeaconHeaderBytes());
+        }
+        return header.toByteArray();
+    }
+
+    /**
+     * @return Size of the stream of {@link #getBeaconFile()}, or -1 if it is
+     * unknown
+     * @throws IOException
+     */
+    @JsonIgnore
+    public long getBeaconFileLength() throws IOException {
+        if (bodySize == null) {
+            return -1;
+        }
+        return getBeaconHeaderBytes().length + bodySize;
+    }
 
-        final SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
-        sdf.setTimeZone(TimeZone.getDefault());
-        final String dt = sdf.format(getCreated());
+    /**
+     * Get the Brotli variant of this Beacon file, which was compressed with
+     * rendered header when the Beacon file was generated.
+     *
+     * @return Stream of the Brotli compressed Beacon file, or null if there
+     * is no variant or it was rendered with another header
+     * @throws IOException
+     */
+    @JsonIgnore
+    public InputStream getBrotliBeaconFile() throws IOException {
+        if (getBrotliBeaconFileLength() < 0) {
+            return null;
+        }
+        if (brotliHash != null) {
+            final BlobStore store = BlobStores.getInstance();
+            return store == null ? null : store.get(brotliHash);
+        }
+        try {
+            if (brotli == null) {
+                return id == null ? null : BeaconFileRepository.getBrotli(id);
+            }
+            return brotli.getBinaryStream();
+        } catch (SQLException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
 
-        final StringBuilder sb = new StringBuilder();
+    /**
+     * @return Size of the stream of {@link #getBrotliBeaconFile()}, or -1 if
+     * there is no variant or it was rendered with another header
+     * @throws IOException
+     */
+    @JsonIgnore
+    public long getBrotliBeaconFileLength() throws IOException {
+        if (brotliHeader == null || !brotliHeader.equals(getHeaderFingerprint())) {
+            return -1;
+        }
+        if (brotliHash != null) {
+            return BlobStores.getInstance() == null ? -1 : brotliLength;
+        }
+        if (brotli == null) {
+            return brotliContentLength == null ? -1 : brotliContentLength;
+        }
+        try {
+            return brotli.length();
+        } catch (SQLException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
 
-        for (String s : Configuration.get().getValueAsArray("beagen.beacon.header." + type.getName().toLowerCase() + "." + sector.getShortName().toLowerCase(), "\\n")) {
-            s = s.replace("{{date}}", dt);
-            s = s.replace("{{id}}", Configuration.get().getValue(BEAGEN_BASEURL) + API_ITEM_METHODE + "/" + getId());
-            s = s.replace("{{feed}}", Configuration.get().getValue(BEAGEN_BASEURL) + API_ITEM_METHODE + "/"
-                    + getType().toString().toLowerCase() + "/"
-                    + getSector().toString().toLowerCase() + "/latest");
-            sb.append(s);
-            sb.append("\n");
+    /**
+     * Set the Brotli variant of this Beacon file like
+     * {@link #setContent(InputStream, long)}. It has to be compressed with the
+     * header as rendered by {@link #getBeaconHeader()}.
+     *
+     * @param content Stream of the Brotli compressed Beacon file
+     * @param length Length of compressed Beacon file
+     * @throws IOException
+     */
+    public void setBrotliContent(InputStream content, long length) throws IOException {
+        final BlobStore store = BlobStores.getInstance();
+        if (store != null) {
+            this.brotliHash = store.put(content);
+            this.brotliLength = length;
+            this.brotli = null;
+        } else {
+            this.brotli = BlobProxy.generateProxy(content, length);
+            this.brotliHash = null;
+            this.brotliLength = null;
         }
-        return sb.toString();
+        this.brotliHeader = getHeaderFingerprint();
+    }
+
+    /**
+     * Get the SHA-256 of the rendered header of this Beacon file. The header
+     * changes with the configured templates, while the lines do not.
+     *
+     * @return Hex encoded SHA-256 of the header
+     * @throws IOException
+     */
+    @JsonIgnore
+    public String getHeaderFingerprint() throws IOException {
+        final MessageDigest digest = newFingerprintDigest();
+        digest.update(getBeaconHeaderBytes());
+        return toFingerprint(digest);
+    }
+
+    /**
+     * Render the header of this Beacon file.
+     *
+     * @return Header lines
+     * @throws IOException
+     */
+    @JsonIgnore
+    public String getBeaconHeader() throws IOException {
+        return new String(getBeaconHeaderBytes(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Render the header of this Beacon file encoded as UTF-8. The array is
+     * shared by all callers and must not be modified.
+     *
+     * @return Header lines
+     * @throws IOException
+     */
+    @JsonIgnore
+    public byte[] getBeaconHeaderBytes() throws IOException {
+        return BeaconHeader.render(getId(), getType(), getSector(), getCreated());
     }
 
     public void setContent(byte[] content) {
-        this.content = Arrays.copyOf(content, content.length);
+        this.content = BlobProxy.generateProxy(Arrays.copyOf(content, content.length));
+    }
+
+    /**
+     * Set the compressed content from a stream. If a blob store is
+     * configured, the content is written to it immediately and only its key is
+     * kept. Otherwise the stream is read once when the Beacon file is
+     * persisted. Either way the content never has to be held in memory.
+     *
+     * @param content Stream of gzip compressed content
+     * @param length Length of compressed content
+     * @throws IOException
+     */
+    public void setContent(InputStream content, long length) throws IOException {
+        final BlobStore store = BlobStores.getInstance();
+        if (store != null) {
+            this.blobHash = store.put(content);
+            this.blobLength = length;
+            this.content = null;
+        } else {
+            this.content = BlobProxy.generateProxy(content, length);
+            this.blobHash = null;
+            this.blobLength = null;
+        }
+    }
+
+    /**
+     * Set the key of the stored compressed content as read from the database.
+     * Content in the database is not kept, it is read by ID when needed.
+     *
+     * @param blobHash Key of the content in the blob store, null if it is in
+     * the database
+     * @param length Size of the content
+     */
+    void setStoredContent(String blobHash, Long length) {
+        this.content = null;
+        this.blobHash = blobHash;
+        this.blobLength = blobHash == null ? null : length;
+        this.contentLength = blobHash == null ? length : null;
+    }
+
+    /**
+     * Set the key of the stored Brotli variant as read from the database like
+     * {@link #setStoredContent(String, Long)}.
+     *
+     * @param brotliHash Key of the Brotli variant in the blob store, null if
+     * it is in the database or there is none
+     * @param length Size of the Brotli variant, null if there is none
+     * @param brotliHeader SHA-256 of the header it was rendered with
+     */
+    void setStoredBrotli(String brotliHash, Long length, String brotliHeader) {
+        this.brotli = null;
+        this.brotliHash = brotliHash;
+        this.brotliLength = brotliHash == null ? null : length;
+        this.brotliContentLength = brotliHash == null ? length : null;
+        this.brotliHeader = brotliHeader;
+    }
+
+    /**
+     * @return Key of the compressed content in the blob store, null if it is
+     * stored in the database
+     */
+    public String getBlobHash() {
+        return blobHash;
+    }
+
+    /**
+     * @return Size of the compressed content in the blob store, null if it is
+     * stored in the database
+     */
+    public Long getBlobLength() {
+        return blobLength;
+    }
+
+    /**
+     * @return ID of the Beacon file the content is a delta of, null if the
+     * content is a full snapshot
+     */
+    public Long getBase() {
+        return base;
+    }
+
+    /**
+     * @param base ID of the Beacon file the content is a delta of, null if
+     * the content is a full snapshot
+     */
+    public void setBase(Long base) {
+        this.base = base;
+    }
+
+    /**
+     * @return Count of deltas since the last full snapshot
+     */
+    public int getDepth() {
+        return depth == null ? 0 : depth;
+    }
+
+    /**
+     * @param depth Count of deltas since the last full snapshot
+     */
+    public void setDepth(int depth) {
+        this.depth = depth;
+    }
+
+    /**
+     * @return ID of the generation the Beacon file was published with, null
+     * if it was stored before generations were introduced
+     */
+    public Long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * @param generation ID of the generation the Beacon file is published
+     * with
+     */
+    public void setGeneration(Long generation) {
+        this.generation = generation;
+    }
+
+    /**
+     * @return SHA-256 of the uncompressed lines without comments as hex
+     * string, null if unknown
+     */
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * @param fingerprint SHA-256 of the uncompressed lines without comments
+     * as hex string
+     */
+    public void setFingerprint(String fingerprint) {
+        this.fingerprint = fingerprint;
+    }
+
+    /**
+     * Create a digest for the fingerprint of a Beacon file. It has to be
+     * updated with every line without comments in UTF-8, each followed by a
+     * line feed.
+     *
+     * @return SHA-256 digest
+     */
+    public static MessageDigest newFingerprintDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform has to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @param digest Digest created by {@link #newFingerprintDigest()}
+     * @return Fingerprint as hex string
+     */
+    public static String toFingerprint(MessageDigest digest) {
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * @return Size of the uncompressed lines without header, null if unknown
+     */
+    public Long getBodySize() {
+        return bodySize;
+    }
+
+    /**
+     * @param bodySize Size of the uncompressed lines without header
+     */
+    public void setBodySize(Long bodySize) {
+        this.bodySize = bodySize;
     }
 
     @Override
@@ -219,7 +690,7 @@ public class BeaconFile implements Serializable {
         }
         final BeaconFile other = (BeaconFile) object;
         try {
-            return equals(other.getContent());
+            return equals(other.getBeaconFile());
         } catch (IOException ex) {
             return false;
         }
@@ -259,29 +730,49 @@ public class BeaconFile implements Serializable {
     }
 
     public boolean equals(byte[] otherContent) throws IOException {
+        return equals(new ByteArrayInputStream(otherContent));
+    }
+
+    /**
+     * Compare the content of this Beacon file with other uncompressed content.
+     * Comment lines are ignored, so a header is not needed.
+     *
+     * @param otherContent Uncompressed content
+     * @return <code>true</code> if both have the same lines
+     * @throws IOException
+     */
+    public boolean equals(InputStream otherContent) throws IOException {
 
         try (final InputStream i1 = getBeaconFile();
-                final InputStream i2 = new ByteArrayInputStream(otherContent);
+                final InputStream i2 = otherContent;
                 final Reader d1 = new InputStreamReader(i1, Charset.forName("UTF-8"));
                 final Reader d2 = new InputStreamReader(i2, Charset.forName("UTF-8"));
                 final BufferedReader b1 = new BufferedReader(d1);
                 final BufferedReader b2 = new BufferedReader(d2)) {
 
             while (true) {
-                final String l1 = b1.readLine();
-                final String l2 = b2.readLine();
+                final String l1 = readNonCommentLine(b1);
+                final String l2 = readNonCommentLine(b2);
 
                 if (l1 == null && l2 == null) {
                     return true; // they are both null (eg. buffer is empty): equal
                 } else if (l1 == null || l2 == null) {
                     return false; // one is null, the other not: not equal
-                } else if (!l1.equals(l2) && !(l1.startsWith("#") && l2.startsWith("#"))) {
-                    return false; // a line which is not equal and not a comment
+                } else if (!l1.equals(l2)) {
+                    return false; // a line which is not equal
                 }
             }
         }
     }
 
+    private static String readNonCommentLine(BufferedReader reader) throws IOException {
+        String line;
+        do {
+            line = reader.readLine();
+        } while (line != null && line.startsWith("#"));
+        return line;
+    }
+
     /**
      * @return the type
      */
@@ -17,6 +17,7 @@ package de.ddb.labs.beagen.backend;
 
 import de.ddb.labs.beagen.backend.data.SECTOR;
 import de.ddb.labs.beagen.backend.data.TYPE;
+import de.ddb.labs.beagen.backend.helper.DatabaseBusyException;
 import de.ddb.labs.beagen.backend.helper.EntityManagerUtil;
 import lombok.extern.slf4j.Slf4j;
 import java.util.ArrayList;
@@ -27,7 +28,8 @@ import javax.persistence.EntityTransaction;
 import javax.persistence.TypedQuery;
 
 /**
- * Database handler for Beacon files
+ * Database handler for Beacon files. Reads are done by
+ * {@link BeaconFileRepository}, writes by JPA.
  *
  * @author Michael Büchner
  */
@@ -37,32 +39,36 @@ public class BeaconFileController {
     private BeaconFileController() {
     }
 
+    /**
+     * Condition of a query, which restricts Beacon files to published
+     * generations. Beacon files of a generation, which is still staged, are
+     * not visible.
+     *
+     * @param alias Alias of the Beacon file in the query
+     * @return Condition in JPQL
+     */
+    public static String isPublished(String alias) {
+        return "(" + alias + ".generation IS NULL OR " + alias + ".generation <= "
+                + "(SELECT MAX(p.id) FROM Generation AS p WHERE p.published IS NOT NULL))";
+    }
+
     /**
      * Get a Beacon file by its ID.
      *
      * @param id ID of Beacon File
      * @return Beacon file object
+     * @throws DatabaseBusyException If no database connection is available
+     * within the connection timeout
      */
     public static BeaconFile getBeaconFile(long id) {
-
-        final EntityManager em = EntityManagerUtil.getInstance().getEntityManager();
-        final EntityTransaction tx = em.getTransaction();
-        tx.begin();
         try {
-            final TypedQuery<BeaconFile> q2 = em.createQuery("SELECT f FROM BeaconFile AS f WHERE f.id = :myid", BeaconFile.class);
-            q2.setParameter("myid", id);
-            q2.setMaxResults(1);
-            if (!q2.getResultList().isEmpty()) {
-                return q2.getResultList().get(0);
-            } else {
-                return null;
-            }
+            return BeaconFileRepository.getBeaconFile(id);
+        } catch (DatabaseBusyException e) {
+            // the request can be retried later
+            throw e;
         } catch (Exception e) {
             log.error("Could not get Beacon file. {}", e.getMessage(), e);
             return null;
-        } finally {
-            tx.commit();
-            em.close();
         }
     }
 
@@ -72,51 +78,22 @@ public class BeaconFileController {
      * @param type Type, can be null, which means all types
      * @param onlyLatest Provide only the latest Beacon files
      * @return List of Beacon file objects
+     * @throws DatabaseBusyException If no database connection is available
+     * within the connection timeout
      */
     public static List<BeaconFile> getBeaconFiles(TYPE type, boolean onlyLatest) {
-        Date lastDate = null;
-        if (onlyLatest) {
-            lastDate = getLastDate(type);
-        }
-
-        String qs = "SELECT f FROM BeaconFile AS f ";
-
-        if (onlyLatest && lastDate != null && type != null) {
-            qs += "WHERE f.created = :lastDate AND f.type = :type ";
-        } else if (onlyLatest && lastDate != null) {
-            qs += "WHERE f.created = :lastDate ";
-        } else if (type != null) {
-            qs += "WHERE f.type = :type ";
-        }
-
-        qs += "ORDER BY f.created DESC, f.type, f.sector ";
-
-        final EntityManager em = EntityManagerUtil.getInstance().getEntityManager();
-        final EntityTransaction tx = em.getTransaction();
-        tx.begin();
         try {
-            final TypedQuery<BeaconFile> q2 = em.createQuery(qs, BeaconFile.class);
-
-            if (onlyLatest && lastDate != null) {
-                q2.setParameter("lastDate", lastDate);
-            }
-
-            if (type != null) {
-                q2.setParameter("type", type);
-            }
-
             if (onlyLatest) {
-                q2.setMaxResults(1);
+                final Date lastDate = BeaconFileRepository.getLastDate(type);
+                return BeaconFileRepository.getBeaconFiles(type, lastDate, 1);
             }
-
-            final List<BeaconFile> result = q2.getResultList();
-            return result;
+            return BeaconFileRepository.getBeaconFiles(type, (Date) null, 0);
+        } catch (DatabaseBusyException e) {
+            // the request can be retried later
+            throw e;
         } catch (Exception e) {
             log.error("Could not get Beacon files. {}", e.getMessage(), e);
             return new ArrayList<>();
-        } finally {
-            tx.commit();
-            em.close();
         }
     }
 
@@ -130,37 +107,74 @@ public class BeaconFileController {
      * @return List of Beacon file objects
      */
     public static List<BeaconFile> getBeaconFiles(TYPE type, SECTOR sector, boolean onlyLatest) {
+        try {
+            return BeaconFileRepository.getBeaconFiles(type, sector, onlyLatest ? 1 : 0);
+        } catch (Exception e) {
+            return new ArrayList<>();
+        }
+    }
 
-        String qs = "SELECT f FROM BeaconFile AS f WHERE ";
+    /**
+     * Get one page of the metadata of Beacon files by type (organsisation or
+     * person) and sector (Archive, Musem etc.), newest first.
+     *
+     * @param type Type, cannot be null
+     * @param sector Sector, cannot be null
+     * @param afterCreated Creation date of the last Beacon file of the
+     * previous page, null for the first page
+     * @param afterId ID of the last Beacon file of the previous page
+     * @param limit Maximum count of Beacon files
+     * @return List of Beacon file metadata
+     * @throws DatabaseBusyException If no database connection is available
+     * within the connection timeout
+     */
+    public static List<BeaconFileInfo> getBeaconFileInfoPage(TYPE type, SECTOR sector, Date afterCreated, long afterId, int limit) {
+        String qs = "SELECT NEW de.ddb.labs.beagen.backend.BeaconFileInfo(f.id, f.type, f.sector, f.created, f.count) FROM BeaconFile AS f "
+                + "WHERE f.type = :type AND f.sector = :mysector AND " + isPublished("f") + " ";
 
-        if (type != null) {
-            qs += "f.type = :type AND ";
+        if (afterCreated != null) {
+            qs += "AND (f.created < :created OR (f.created = :created AND f.id < :id)) ";
         }
 
-        qs += "f.sector = :mysector ORDER BY f.created DESC, f.type, f.sector ";
+        qs += "ORDER BY f.created DESC, f.id DESC";
 
-        final EntityManager em = EntityManagerUtil.getInstance().getEntityManager();
-        final EntityTransaction tx = em.getTransaction();
-        tx.begin();
         try {
-            final TypedQuery<BeaconFile> q2 = em.createQuery(qs, BeaconFile.class);
-            q2.setParameter("mysector", sector);
-            if (type != null) {
-                q2.setParameter("type", type);
+            final EntityManager em = EntityManagerUtil.getInstance().getEntityManager();
+            try {
+                final TypedQuery<BeaconFileInfo> q = em.createQuery(qs, BeaconFileInfo.class);
+                q.setParameter("type", type);
+                q.setParameter("mysector", sector);
+                if (afterCreated != null) {
+                    q.setParameter("created", afterCreated);
+                    q.setParameter("id", afterId);
+                }
+                q.setMaxResults(limit);
+                return q.getResultList();
+            } finally {
+                em.close();
             }
-
-            if (onlyLatest) {
-                q2.setMaxResults(1);
-            }
-            final List<BeaconFile> result = q2.getResultList();
-            return result;
+        } catch (DatabaseBusyException e) {
+            // the request can be retried later
+            throw e;
         } catch (Exception e) {
+            log.error("Could not get Beacon files. {}", e.getMessage(), e);
             return new ArrayList<>();
-        } finally {
-            tx.commit();
-            em.close();
         }
+    }
 
+    /**
+     * Get the latest Beacon file of every type and sector.
+     *
+     * @return List of Beacon file objects, ordered by ID, or null if they
+     * could not be loaded
+     */
+    public static List<BeaconFile> getLatestBeaconFiles() {
+        try {
+            return BeaconFileRepository.getLatestBeaconFiles();
+        } catch (Exception e) {
+            log.error("Could not get latest Beacon files. {}", e.getMessage(), e);
+            return null;
+        }
     }
 
     /**
@@ -170,27 +184,50 @@ public class BeaconFileController {
      * @return Date of last Beacon file update
      */
     public static Date getLastDate(TYPE type) {
-        String qs = "SELECT MAX(f.created) FROM BeaconFile AS f ";
-
-        if (type != null) {
-            qs += "WHERE f.type = :type ";
+        try {
+            return BeaconFileRepository.getLastDate(type);
+        } catch (Exception e) {
+            log.warn("Could not get latest date for Beacon files. {}. Maybe there's no data yet?", e.getMessage());
+            return null;
         }
+    }
 
+    /**
+     * Publish a staged generation, which makes all of its Beacon files
+     * visible at once. Beacon files of other generations, which were staged
+     * but never published (e.g. by an aborted run), are deleted.
+     *
+     * @param id ID of the generation
+     * @return <code>true</code> if the generation was published
+     */
+    public static boolean publishGeneration(long id) {
         final EntityManager em = EntityManagerUtil.getInstance().getEntityManager();
         final EntityTransaction tx = em.getTransaction();
-        tx.begin();
         try {
-            final TypedQuery<Date> q2 = em.createQuery(qs, Date.class);
-            if (type != null) {
-                q2.setParameter("type", type);
+            tx.begin();
+            final int stale = em.createQuery("DELETE FROM BeaconFile AS f WHERE f.generation IN "
+                    + "(SELECT g.id FROM Generation AS g WHERE g.published IS NULL AND g.id <> :id)")
+                    .setParameter("id", id)
+                    .executeUpdate();
+            em.createQuery("DELETE FROM Generation AS g WHERE g.published IS NULL AND g.id <> :id")
+                    .setParameter("id", id)
+                    .executeUpdate();
+            final int published = em.createQuery("UPDATE Generation AS g SET g.published = :now WHERE g.id = :id AND g.published IS NULL")
+                    .setParameter("now", new Date())
+                    .setParameter("id", id)
+                    .executeUpdate();
+            tx.commit();
+            if (stale > 0) {
+                log.warn("Deleted {} Beacon files of generations, which were never published.", stale);
             }
-            final List<Date> result = q2.getResultList();
-            return result.isEmpty() ? null : result.get(0);
+            return published == 1;
         } catch (Exception e) {
-            log.warn("Could not get latest date for Beacon files. {}. Maybe there's no data yet?", e.getMessage());
-            return null;
+            log.error("Could not publish generation {}. {}", id, e.getMessage(), e);
+            return false;
         } finally {
-            tx.commit();
+            if (tx.isActive()) {
+                tx.rollback();
+            }
             em.close();
         }
     }
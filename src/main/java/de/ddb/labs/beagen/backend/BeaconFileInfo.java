@@ -0,0 +1,78 @@
+/* 
+ * Copyright 2019-2026 Michael Büchner, Deutsche Digitale Bibliothek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.ddb.labs.beagen.backend;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import de.ddb.labs.beagen.backend.BeaconFile.IdSerializer;
+import de.ddb.labs.beagen.backend.data.SECTOR;
+import de.ddb.labs.beagen.backend.data.SECTOR.SectorSerializer;
+import de.ddb.labs.beagen.backend.data.TYPE;
+import de.ddb.labs.beagen.backend.data.TYPE.TypeSerializer;
+import java.util.Date;
+
+/**
+ * Metadata of a Beacon file without content, as it is listed by the API. It
+ * is serialized the same way as {@link BeaconFile}.
+ *
+ * @author Michael Büchner
+ */
+public class BeaconFileInfo {
+
+    @JsonSerialize(using = IdSerializer.class)
+    @JsonProperty("@id")
+    private final Long id;
+
+    @JsonSerialize(using = TypeSerializer.class)
+    private final TYPE type;
+
+    @JsonSerialize(using = SectorSerializer.class)
+    private final SECTOR sector;
+
+    @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "yyyy-MM-dd'T'HH:mm:ss'Z'")
+    private final Date created;
+
+    private final int count;
+
+    public BeaconFileInfo(Long id, TYPE type, SECTOR sector, Date created, int count) {
+        this.id = id;
+        this.type = type;
+        this.sector = sector;
+        this.created = new Date(created.getTime());
+        this.count = count;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public TYPE getType() {
+        return type;
+    }
+
+    public SECTOR getSector() {
+        return sector;
+    }
+
+    public Date getCreated() {
+        return new Date(created.getTime());
+    }
+
+    public int getCount() {
+        return count;
+    }
+}
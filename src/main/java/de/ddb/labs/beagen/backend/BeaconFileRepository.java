@@ -0,0 +1,268 @@
+/* 
+ * Copyright 2019-2026 Michael Büchner, Deutsche Digitale Bibliothek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.ddb.labs.beagen.backend;
+
+import de.ddb.labs.beagen.backend.data.SECTOR;
+import de.ddb.labs.beagen.backend.data.TYPE;
+import de.ddb.labs.beagen.backend.helper.EntityManagerUtil;
+import de.ddb.labs.beagen.backend.helper.SpoolFile;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.sql.Blob;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Read-only access to published Beacon files by plain JDBC. Every query is a
+ * constant prepared statement, so the database can reuse its plan, and runs
+ * without transaction on a pooled connection. Writes are done by JPA.
+ *
+ * @author Michael Büchner
+ */
+public class BeaconFileRepository {
+
+    // LOBs are not selected, a Blob is only valid as long as its connection
+    private static final String COLUMNS = "f.id, f.type, f.sector, f.created, f.count, "
+            + "f.blobhash, COALESCE(f.bloblength, OCTET_LENGTH(f.content)) AS contentlength, f.bodysize, "
+            + "f.brotlihash, COALESCE(f.brotlilength, OCTET_LENGTH(f.brotli)) AS brotlicontentlength, f.brotliheader, "
+            + "f.base, f.depth, f.fingerprint, f.generation";
+    private static final String PUBLISHED = BeaconFileController.isPublished("f");
+    private static final String ORDER = " ORDER BY f.created DESC, f.type, f.sector";
+
+    private static final String BY_ID = "SELECT " + COLUMNS + " FROM BeaconFile AS f WHERE f.id = ? AND " + PUBLISHED;
+    private static final String BY_TYPE = "SELECT " + COLUMNS + " FROM BeaconFile AS f WHERE f.type = ? AND " + PUBLISHED + ORDER;
+    private static final String BY_TYPE_AND_DATE = "SELECT " + COLUMNS + " FROM BeaconFile AS f WHERE f.type = ? AND f.created = ? AND " + PUBLISHED + ORDER;
+    private static final String BY_SECTOR = "SELECT " + COLUMNS + " FROM BeaconFile AS f WHERE f.sector = ? AND " + PUBLISHED + ORDER;
+    private static final String BY_TYPE_AND_SECTOR = "SELECT " + COLUMNS + " FROM BeaconFile AS f WHERE f.type = ? AND f.sector = ? AND " + PUBLISHED + ORDER;
+    private static final String ALL = "SELECT " + COLUMNS + " FROM BeaconFile AS f WHERE " + PUBLISHED + ORDER;
+    private static final String BY_DATE = "SELECT " + COLUMNS + " FROM BeaconFile AS f WHERE f.created = ? AND " + PUBLISHED + ORDER;
+    private static final String LATEST = "SELECT " + COLUMNS + " FROM BeaconFile AS f WHERE " + PUBLISHED + " AND f.created = "
+            + "(SELECT MAX(g.created) FROM BeaconFile AS g WHERE g.type = f.type AND g.sector = f.sector AND " + BeaconFileController.isPublished("g") + ") "
+            + "ORDER BY f.id";
+    private static final String CONTENT = "SELECT f.content FROM BeaconFile AS f WHERE f.id = ?";
+    private static final String BROTLI = "SELECT f.brotli FROM BeaconFile AS f WHERE f.id = ?";
+    private static final String LAST_DATE = "SELECT MAX(f.created) FROM BeaconFile AS f WHERE " + PUBLISHED;
+    private static final String LAST_DATE_BY_TYPE = "SELECT MAX(f.created) FROM BeaconFile AS f WHERE f.type = ? AND " + PUBLISHED;
+
+    private BeaconFileRepository() {
+    }
+
+    /**
+     * Get a Beacon file by its ID.
+     *
+     * @param id ID of Beacon file
+     * @return Beacon file or null if there is none
+     * @throws SQLException
+     */
+    public static BeaconFile getBeaconFile(long id) throws SQLException {
+        return EntityManagerUtil.getInstance().read(connection -> {
+            try (PreparedStatement ps = connection.prepareStatement(BY_ID)) {
+                ps.setLong(1, id);
+                try (ResultSet rs = ps.executeQuery()) {
+                    return rs.next() ? toBeaconFile(rs) : null;
+                }
+            }
+        });
+    }
+
+    /**
+     * Get Beacon files by type, newest first.
+     *
+     * @param type Type, can be null, which means all types
+     * @param created Creation date of the Beacon files, can be null, which
+     * means all dates
+     * @param limit Maximum count of Beacon files (0 = no limit)
+     * @return Beacon files
+     * @throws SQLException
+     */
+    public static List<BeaconFile> getBeaconFiles(TYPE type, Date created, int limit) throws SQLException {
+        return EntityManagerUtil.getInstance().read(connection -> {
+            final String sql = type == null
+                    ? (created == null ? ALL : BY_DATE)
+                    : (created == null ? BY_TYPE : BY_TYPE_AND_DATE);
+            try (PreparedStatement ps = connection.prepareStatement(sql)) {
+                int i = 0;
+                if (type != null) {
+                    ps.setString(++i, type.name());
+                }
+                if (created != null) {
+                    ps.setTimestamp(++i, new Timestamp(created.getTime()));
+                }
+                ps.setMaxRows(limit);
+                return toBeaconFiles(ps);
+            }
+        });
+    }
+
+    /**
+     * Get Beacon files by type and sector, newest first.
+     *
+     * @param type Type, can be null, which means all types
+     * @param sector Sector, cannot be null
+     * @param limit Maximum count of Beacon files (0 = no limit)
+     * @return Beacon files
+     * @throws SQLException
+     */
+    public static List<BeaconFile> getBeaconFiles(TYPE type, SECTOR sector, int limit) throws SQLException {
+        return EntityManagerUtil.getInstance().read(connection -> {
+            try (PreparedStatement ps = connection.prepareStatement(type == null ? BY_SECTOR : BY_TYPE_AND_SECTOR)) {
+                int i = 0;
+                if (type != null) {
+                    ps.setString(++i, type.name());
+                }
+                ps.setString(++i, sector.name());
+                ps.setMaxRows(limit);
+                return toBeaconFiles(ps);
+            }
+        });
+    }
+
+    /**
+     * Get the latest Beacon file of every type and sector.
+     *
+     * @return Beacon files, ordered by ID
+     * @throws SQLException
+     */
+    public static List<BeaconFile> getLatestBeaconFiles() throws SQLException {
+        return EntityManagerUtil.getInstance().read(connection -> {
+            try (PreparedStatement ps = connection.prepareStatement(LATEST)) {
+                return toBeaconFiles(ps);
+            }
+        });
+    }
+
+    /**
+     * Get the gzip compressed content of a Beacon file, which is stored in the
+     * database. A Blob can only be read while its connection is held, so the
+     * content is copied to a spool file, which is deleted when the stream is
+     * closed.
+     *
+     * @param id ID of Beacon file
+     * @return Stream of the content or null if there is none
+     * @throws SQLException
+     * @throws IOException
+     */
+    public static InputStream getContent(long id) throws SQLException, IOException {
+        return getLob(CONTENT, id);
+    }
+
+    /**
+     * Get the Brotli variant of a Beacon file, which is stored in the
+     * database, like {@link #getContent(long)}.
+     *
+     * @param id ID of Beacon file
+     * @return Stream of the Brotli variant or null if there is none
+     * @throws SQLException
+     * @throws IOException
+     */
+    public static InputStream getBrotli(long id) throws SQLException, IOException {
+        return getLob(BROTLI, id);
+    }
+
+    private static InputStream getLob(String sql, long id) throws SQLException, IOException {
+        final SpoolFile spool = new SpoolFile("beagen-lob-");
+        try {
+            final boolean found = EntityManagerUtil.getInstance().read(connection -> {
+                try (PreparedStatement ps = connection.prepareStatement(sql)) {
+                    ps.setLong(1, id);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        final Blob blob = rs.next() ? rs.getBlob(1) : null;
+                        if (blob == null) {
+                            return false;
+                        }
+                        try (InputStream is = blob.getBinaryStream();
+                                OutputStream os = spool.getOutputStream()) {
+                            is.transferTo(os);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        } finally {
+                            blob.free();
+                        }
+                        return true;
+                    }
+                }
+            });
+            if (!found) {
+                spool.close();
+                return null;
+            }
+            return spool.getTransientInputStream();
+        } catch (UncheckedIOException e) {
+            spool.close();
+            throw e.getCause();
+        } catch (SQLException | IOException | RuntimeException e) {
+            spool.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Get the creation date of the latest Beacon file.
+     *
+     * @param type Type, can be null, which means all types
+     * @return Date or null if there is no Beacon file
+     * @throws SQLException
+     */
+    public static Date getLastDate(TYPE type) throws SQLException {
+        return EntityManagerUtil.getInstance().read(connection -> {
+            try (PreparedStatement ps = connection.prepareStatement(type == null ? LAST_DATE : LAST_DATE_BY_TYPE)) {
+                if (type != null) {
+                    ps.setString(1, type.name());
+                }
+                try (ResultSet rs = ps.executeQuery()) {
+                    return rs.next() ? rs.getTimestamp(1) : null;
+                }
+            }
+        });
+    }
+
+    private static List<BeaconFile> toBeaconFiles(PreparedStatement ps) throws SQLException {
+        final List<BeaconFile> files = new ArrayList<>();
+        try (ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                files.add(toBeaconFile(rs));
+            }
+        }
+        return files;
+    }
+
+    private static BeaconFile toBeaconFile(ResultSet rs) throws SQLException {
+        final BeaconFile bf = new BeaconFile();
+        bf.setId(rs.getLong("id"));
+        bf.setType(TYPE.valueOf(rs.getString("type")));
+        bf.setSector(SECTOR.valueOf(rs.getString("sector")));
+        bf.setCreated(rs.getTimestamp("created"));
+        bf.setCount(rs.getInt("count"));
+        bf.setStoredContent(rs.getString("blobhash"), rs.getObject("contentlength", Long.class));
+        bf.setBodySize(rs.getObject("bodysize", Long.class));
+        bf.setStoredBrotli(rs.getString("brotlihash"), rs.getObject("brotlicontentlength", Long.class), rs.getString("brotliheader"));
+        bf.setBase(rs.getObject("base", Long.class));
+        final Integer depth = rs.getObject("depth", Integer.class);
+        if (depth != null) {
+            bf.setDepth(depth);
+        }
+        bf.setFingerprint(rs.getString("fingerprint"));
+        bf.setGeneration(rs.getObject("generation", Long.class));
+        return bf;
+    }
+}
@@ -0,0 +1,188 @@
+/* 
+ * Copyright 2019-2026 Michael Büchner, Deutsche Digitale Bibliothek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.ddb.labs.beagen.backend;
+
+import de.ddb.labs.beagen.backend.data.SECTOR;
+import de.ddb.labs.beagen.backend.data.TYPE;
+import de.ddb.labs.beagen.backend.helper.Configuration;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Header templates of Beacon files, parsed once per type and sector from
+ * <code>beagen.beacon.header.&lt;type&gt;.&lt;sector&gt;</code>. A template
+ * is a list of UTF-8 encoded text segments and the placeholders
+ * <code>{{date}}</code> and <code>{{id}}</code>, which differ per Beacon
+ * file; <code>{{feed}}</code> is the same for all Beacon files of a type and
+ * sector and is resolved while parsing. Rendered headers are kept per ID of
+ * the Beacon file.
+ *
+ * @author Michael Büchner
+ */
+public class BeaconHeader {
+
+    private static final String BEAGEN_BASEURL = "beagen.baseurl";
+    private static final String BEAGEN_BEACON_HEADER = "beagen.beacon.header.";
+    private static final String API_ITEM_METHODE = "/item";
+    // local time, the Z is part of the pattern as it always was
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss'Z'").withZone(ZoneId.systemDefault());
+    // count of rendered headers kept, the cache is cleared when it is full
+    private static final int CACHE_SIZE = 4096;
+    private static final Map<Long, byte[]> RENDERED = new ConcurrentHashMap<>();
+
+    private static volatile Map<TYPE, Map<SECTOR, List<Segment>>> templates;
+
+    private BeaconHeader() {
+    }
+
+    /**
+     * Parse the header templates of all types and sectors from the
+     * configuration. Templates are parsed on first use, so this is only
+     * needed to parse them at startup or again after the configuration
+     * changed.
+     *
+     * @throws IOException
+     */
+    public static synchronized void load() throws IOException {
+        final String baseUrl = Configuration.get().getValue(BEAGEN_BASEURL);
+        final Map<TYPE, Map<SECTOR, List<Segment>>> parsed = new EnumMap<>(TYPE.class);
+        for (TYPE type : TYPE.values()) {
+            for (SECTOR sector : SECTOR.values()) {
+                final String template = Configuration.get().getValue(BEAGEN_BEACON_HEADER + type.getName().toLowerCase() + "." + sector.getShortName().toLowerCase());
+                if (template != null) {
+                    final String feed = baseUrl + API_ITEM_METHODE + "/" + type.name().toLowerCase() + "/" + sector.name().toLowerCase() + "/latest";
+                    parsed.computeIfAbsent(type, t -> new EnumMap<>(SECTOR.class)).put(sector, parse(template, feed, baseUrl + API_ITEM_METHODE + "/"));
+                }
+            }
+        }
+        templates = parsed;
+        RENDERED.clear();
+    }
+
+    /**
+     * Render the header of a Beacon file.
+     *
+     * @param id ID of the Beacon file, can be null while it is not persisted
+     * @param type Type
+     * @param sector Sector
+     * @param created Creation date
+     * @return Header lines encoded as UTF-8, the array must not be modified
+     * @throws IOException If there is no header for the type and sector
+     */
+    public static byte[] render(Long id, TYPE type, SECTOR sector, Date created) throws IOException {
+        if (id != null) {
+            final byte[] header = RENDERED.get(id);
+            if (header != null) {
+                return header;
+            }
+        }
+
+        if (templates == null) {
+            load();
+        }
+        final Map<SECTOR, List<Segment>> sectors = templates.get(type);
+        final List<Segment> segments = sectors == null ? null : sectors.get(sector);
+        if (segments == null) {
+            throw new IOException("No Beacon header configured for " + type.getName() + "/" + sector.getShortName());
+        }
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(1024);
+        for (Segment segment : segments) {
+            switch (segment.placeholder) {
+                case DATE ->
+                    out.writeBytes(DATE_FORMAT.format(created.toInstant()).getBytes(StandardCharsets.US_ASCII));
+                case ID ->
+                    out.writeBytes(String.valueOf(id).getBytes(StandardCharsets.US_ASCII));
+                default ->
+                    out.writeBytes(segment.text);
+            }
+        }
+        final byte[] header = out.toByteArray();
+
+        if (id != null) {
+            if (RENDERED.size() >= CACHE_SIZE) {
+                RENDERED.clear();
+            }
+            RENDERED.put(id, header);
+        }
+        return header;
+    }
+
+    /**
+     * Split a template into segments. Every line of the template ends with a
+     * line break.
+     */
+    private static List<Segment> parse(String template, String feed, String itemUrl) {
+        final StringBuilder text = new StringBuilder();
+        for (String line : template.split("\\n")) {
+            text.append(line.replace("{{feed}}", feed)).append('\n');
+        }
+
+        final List<Segment> segments = new ArrayList<>();
+        int start = 0;
+        while (start < text.length()) {
+            final int date = text.indexOf("{{date}}", start);
+            final int id = text.indexOf("{{id}}", start);
+            final int next = date < 0 ? id : (id < 0 ? date : Math.min(date, id));
+            if (next < 0) {
+                segments.add(new Segment(text.substring(start)));
+                break;
+            }
+            if (next == id) {
+                segments.add(new Segment(text.substring(start, next) + itemUrl));
+                segments.add(new Segment(Placeholder.ID));
+                start = next + "{{id}}".length();
+            } else {
+                segments.add(new Segment(text.substring(start, next)));
+                segments.add(new Segment(Placeholder.DATE));
+                start = next + "{{date}}".length();
+            }
+        }
+        return segments;
+    }
+
+    private enum Placeholder {
+        TEXT, DATE, ID
+    }
+
+    /**
+     * Text or placeholder of a template
+     */
+    private static class Segment {
+
+        private final Placeholder placeholder;
+        private final byte[] text;
+
+        private Segment(String text) {
+            this.placeholder = Placeholder.TEXT;
+            this.text = text.getBytes(StandardCharsets.UTF_8);
+        }
+
+        private Segment(Placeholder placeholder) {
+            this.placeholder = placeholder;
+            this.text = null;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/* 
+ * Copyright 2019-2026 Michael Büchner, Deutsche Digitale Bibliothek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.ddb.labs.beagen.backend;
+
+import java.io.Serializable;
+import java.util.Date;
+import javax.persistence.Basic;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
+
+/**
+ * Beacon files generated by one run. The Beacon files of a generation are
+ * staged invisibly and become visible together, when the generation is
+ * published. The latest published generation is the pointer to the current
+ * state: Beacon files of it and all generations before are visible.
+ *
+ * @author Michael Büchner
+ */
+@Entity
+@Table(name = "Generation")
+public class Generation implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @Id
+    @Basic(optional = false)
+    @GeneratedValue(strategy = GenerationType.AUTO)
+    @Column(name = "id", updatable = false, nullable = false)
+    private Long id;
+
+    @Basic(optional = false)
+    @Column(name = "created")
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date created;
+
+    // null while the generation is staged
+    @Column(name = "published")
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date published;
+
+    public Generation() {
+    }
+
+    public Generation(Date created) {
+        this.created = new Date(created.getTime());
+    }
+
+    /**
+     * @return the ID of the generation
+     */
+    public Long getId() {
+        return id;
+    }
+
+    /**
+     * @return the time the generation was staged
+     */
+    public Date getCreated() {
+        return new Date(created.getTime());
+    }
+
+    /**
+     * @return the time the generation was published, null if it is staged
+     */
+    public Date getPublished() {
+        return published == null ? null : new Date(published.getTime());
+    }
+
+    @Override
+    public int hashCode() {
+        return id != null ? id.hashCode() : 0;
+    }
+
+    @Override
+    public boolean equals(Object object) {
+        if (!(object instanceof Generation)) {
+            return false;
+        }
+        final Generation other = (Generation) object;
+        return id != null && id.equals(other.id);
+    }
+
+    @Override
+    public String toString() {
+        return "de.ddb.labs.beagen.backend.Generation[ id=" + id + " ]";
+    }
+}
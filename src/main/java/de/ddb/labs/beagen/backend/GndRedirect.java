@@ -0,0 +1,135 @@
+/* 
+ * Copyright 2019-2026 Michael Büchner, Deutsche Digitale Bibliothek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.ddb.labs.beagen.backend;
+
+import java.io.Serializable;
+import java.util.Date;
+import javax.persistence.Basic;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
+
+/**
+ * Resolution of a GND-ID to its current GND-ID by Entity Facts
+ *
+ * @author Michael Büchner
+ */
+@Entity
+@Table(name = "GndRedirect", indexes = {
+    @Index(name = "idx_gndredirect_checked", columnList = "checked")
+})
+public class GndRedirect implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @Id
+    @Basic(optional = false)
+    @Column(name = "sourceId", length = 64, updatable = false, nullable = false)
+    private String sourceId;
+
+    @Basic(optional = false)
+    @Column(name = "resolvedId")
+    private String resolvedId;
+
+    @Basic(optional = false)
+    @Column(name = "checked")
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date checked;
+
+    public GndRedirect() {
+    }
+
+    public GndRedirect(String sourceId, String resolvedId, Date checked) {
+        this.sourceId = sourceId;
+        this.resolvedId = resolvedId;
+        this.checked = new Date(checked.getTime());
+    }
+
+    /**
+     * @return the GND-ID which was resolved
+     */
+    public String getSourceId() {
+        return sourceId;
+    }
+
+    /**
+     * @param sourceId the GND-ID which was resolved
+     */
+    public void setSourceId(String sourceId) {
+        this.sourceId = sourceId;
+    }
+
+    /**
+     * @return the current GND-ID
+     */
+    public String getResolvedId() {
+        return resolvedId;
+    }
+
+    /**
+     * @param resolvedId the current GND-ID
+     */
+    public void setResolvedId(String resolvedId) {
+        this.resolvedId = resolvedId;
+    }
+
+    /**
+     * @return the time of the last check at Entity Facts
+     */
+    public Date getChecked() {
+        return new Date(checked.getTime());
+    }
+
+    /**
+     * @param checked the time of the last check at Entity Facts
+     */
+    public void setChecked(Date checked) {
+        this.checked = new Date(checked.getTime());
+    }
+
+    /**
+     * Check whether the resolution is older than a time to live.
+     *
+     * @param ttl Time to live in milliseconds
+     * @return <code>true</code> if the resolution has to be checked again
+     */
+    public boolean isExpired(long ttl) {
+        return checked.getTime() + ttl < System.currentTimeMillis();
+    }
+
+    @Override
+    public int hashCode() {
+        return sourceId != null ? sourceId.hashCode() : 0;
+    }
+
+    @Override
+    public boolean equals(Object object) {
+        if (!(object instanceof GndRedirect)) {
+            return false;
+        }
+        final GndRedirect other = (GndRedirect) object;
+        return sourceId != null && sourceId.equals(other.sourceId);
+    }
+
+    @Override
+    public String toString() {
+        return "de.ddb.labs.beacon.backend.GndRedirect[ sourceId=" + sourceId + " ]";
+    }
+}
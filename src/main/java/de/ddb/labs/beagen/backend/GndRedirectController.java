@@ -0,0 +1,91 @@
+/* 
+ * Copyright 2019-2026 Michael Büchner, Deutsche Digitale Bibliothek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.ddb.labs.beagen.backend;
+
+import de.ddb.labs.beagen.backend.helper.EntityManagerUtil;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityTransaction;
+import javax.persistence.TypedQuery;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Database handler for resolved GND-IDs
+ *
+ * @author Michael Büchner
+ */
+@Slf4j
+public class GndRedirectController {
+
+    private GndRedirectController() {
+    }
+
+    /**
+     * Get all resolutions checked after a point in time.
+     *
+     * @param checkedAfter Oldest time of check to return
+     * @return List of resolutions
+     */
+    public static List<GndRedirect> getGndRedirects(Date checkedAfter) {
+
+        final EntityManager em = EntityManagerUtil.getInstance().getEntityManager();
+        final EntityTransaction tx = em.getTransaction();
+        tx.begin();
+        try {
+            final TypedQuery<GndRedirect> q2 = em.createQuery("SELECT r FROM GndRedirect AS r WHERE r.checked > :checkedAfter", GndRedirect.class);
+            q2.setParameter("checkedAfter", checkedAfter);
+            return q2.getResultList();
+        } catch (Exception e) {
+            log.error("Could not get resolved GND-IDs. {}", e.getMessage(), e);
+            return new ArrayList<>();
+        } finally {
+            tx.commit();
+            em.close();
+        }
+    }
+
+    /**
+     * Insert or update resolutions in one transaction.
+     *
+     * @param redirects Resolutions
+     */
+    public static void saveGndRedirects(Collection<GndRedirect> redirects) {
+
+        if (redirects.isEmpty()) {
+            return;
+        }
+
+        final EntityManager em = EntityManagerUtil.getInstance().getEntityManager();
+        final EntityTransaction tx = em.getTransaction();
+        tx.begin();
+        try {
+            for (GndRedirect redirect : redirects) {
+                em.merge(redirect);
+            }
+            tx.commit();
+        } catch (Exception e) {
+            log.warn("Could not save {} resolved GND-IDs. {}", redirects.size(), e.getMessage());
+            if (tx.isActive()) {
+                tx.rollback();
+            }
+        } finally {
+            em.close();
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/* 
+ * Copyright 2019-2026 Michael Büchner, Deutsche Digitale Bibliothek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.ddb.labs.beagen.backend;
+
+import de.ddb.labs.beagen.backend.data.SECTOR;
+import de.ddb.labs.beagen.backend.data.TYPE;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * In-memory index of the latest Beacon file of every type and sector. It is
+ * loaded from the database on first use and replaced as a whole by
+ * {@link #refresh()} after new Beacon files were published, so readers always
+ * see either the old or the new index and never query the database for it.
+ * Only the metadata and the keys of the content are kept; content stored in
+ * the database is read by ID when it is sent.
+ *
+ * @author Michael Büchner
+ */
+@Slf4j
+public class LatestBeaconFiles {
+
+    private static volatile Map<TYPE, Map<SECTOR, BeaconFile>> latest;
+
+    private LatestBeaconFiles() {
+    }
+
+    /**
+     * Get the latest Beacon file of a type and sector.
+     *
+     * @param type Type
+     * @param sector Sector
+     * @return Latest Beacon file or null if there is none
+     */
+    public static BeaconFile get(TYPE type, SECTOR sector) {
+        Map<TYPE, Map<SECTOR, BeaconFile>> index = latest;
+        if (index == null) {
+            index = refresh();
+        }
+        final Map<SECTOR, BeaconFile> sectors = index.get(type);
+        return sectors == null ? null : sectors.get(sector);
+    }
+
+    /**
+     * Load the latest Beacon files from the database and replace the index.
+     * If they cannot be loaded, the index is not changed.
+     *
+     * @return Current index
+     */
+    public static synchronized Map<TYPE, Map<SECTOR, BeaconFile>> refresh() {
+        final List<BeaconFile> files = BeaconFileController.getLatestBeaconFiles();
+        if (files == null) {
+            return latest == null ? Collections.emptyMap() : latest;
+        }
+
+        final Map<TYPE, Map<SECTOR, BeaconFile>> index = new EnumMap<>(TYPE.class);
+        for (BeaconFile file : files) {
+            index.computeIfAbsent(file.getType(), t -> new EnumMap<>(SECTOR.class)).put(file.getSector(), file);
+        }
+        for (Map.Entry<TYPE, Map<SECTOR, BeaconFile>> entry : index.entrySet()) {
+            entry.setValue(Collections.unmodifiableMap(entry.getValue()));
+        }
+
+        latest = Collections.unmodifiableMap(index);
+        log.info("Loaded {} latest Beacon files.", files.size());
+        return latest;
+    }
+}
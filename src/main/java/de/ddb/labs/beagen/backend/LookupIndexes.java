@@ -0,0 +1,137 @@
+/* 
+ * Copyright 2019-2026 Michael Büchner, Deutsche Digitale Bibliothek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.ddb.labs.beagen.backend;
+
+import de.ddb.labs.beagen.backend.data.TYPE;
+import de.ddb.labs.beagen.backend.helper.Configuration;
+import de.ddb.labs.beagen.backend.helper.LookupIndex;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Lookup indexes of the latest published generation of every type. The index
+ * files are kept in <code>beagen.lookup.path</code>, mapped on first use and
+ * replaced as a whole by {@link #publish(Map)}, so readers always see either
+ * the old or the new index of a type.
+ *
+ * @author Michael Büchner
+ */
+@Slf4j
+public class LookupIndexes {
+
+    private static final String BEAGEN_LOOKUP_PATH = "beagen.lookup.path";
+    private static volatile Map<TYPE, LookupIndex> indexes;
+
+    private LookupIndexes() {
+    }
+
+    /**
+     * Get the lookup index of a type.
+     *
+     * @param type Type
+     * @return Lookup index or null if there is none
+     */
+    public static LookupIndex get(TYPE type) {
+        Map<TYPE, LookupIndex> current = indexes;
+        if (current == null) {
+            current = load();
+        }
+        return current.get(type);
+    }
+
+    /**
+     * Create a file in the directory of the lookup indexes to write the index
+     * of a new generation to, which is published by {@link #publish(Map)}.
+     *
+     * @param type Type
+     * @return Empty file
+     * @throws IOException
+     */
+    public static Path createStagingFile(TYPE type) throws IOException {
+        final Path dir = getDirectory();
+        Files.createDirectories(dir);
+        return Files.createTempFile(dir, type.getName().toLowerCase() + "-", ".tmp");
+    }
+
+    /**
+     * Replace the lookup indexes of types by new ones. The files are moved to
+     * their final names, so an index is published even if it cannot be mapped
+     * right now.
+     *
+     * @param staged Files of new lookup indexes per type
+     */
+    public static synchronized void publish(Map<TYPE, Path> staged) {
+        if (staged.isEmpty()) {
+            return;
+        }
+        final Map<TYPE, LookupIndex> current = new EnumMap<>(TYPE.class);
+        current.putAll(indexes == null ? load() : indexes);
+        try {
+            for (Map.Entry<TYPE, Path> entry : staged.entrySet()) {
+                final Path path = getPath(entry.getKey());
+                Files.move(entry.getValue(), path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                try {
+                    current.put(entry.getKey(), LookupIndex.open(path));
+                } catch (IOException ex) {
+                    current.remove(entry.getKey());
+                    log.error("Could not open lookup index {}. {}", path, ex.getMessage());
+                }
+            }
+        } catch (IOException ex) {
+            log.error("Could not publish lookup index. {}", ex.getMessage());
+        }
+        indexes = Collections.unmodifiableMap(current);
+    }
+
+    private static synchronized Map<TYPE, LookupIndex> load() {
+        if (indexes != null) {
+            return indexes;
+        }
+        final Map<TYPE, LookupIndex> current = new EnumMap<>(TYPE.class);
+        try {
+            for (TYPE type : TYPE.values()) {
+                final Path path = getPath(type);
+                if (Files.exists(path)) {
+                    try {
+                        current.put(type, LookupIndex.open(path));
+                        log.info("Loaded lookup index {} with {} GND-IDs.", path, current.get(type).size());
+                    } catch (IOException ex) {
+                        log.error("Could not open lookup index {}. {}", path, ex.getMessage());
+                    }
+                }
+            }
+        } catch (IOException ex) {
+            log.error("Could not load lookup indexes. {}", ex.getMessage());
+        }
+        indexes = Collections.unmodifiableMap(current);
+        return indexes;
+    }
+
+    private static Path getPath(TYPE type) throws IOException {
+        return getDirectory().resolve(type.getName().toLowerCase() + ".idx");
+    }
+
+    private static Path getDirectory() throws IOException {
+        return Paths.get(Configuration.get().getValue(BEAGEN_LOOKUP_PATH));
+    }
+}
@@ -0,0 +1,363 @@
+/* 
+ * Copyright 2019-2026 Michael Büchner, Deutsche Digitale Bibliothek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.ddb.labs.beagen.backend.data;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Columnar store of harvested entity counts. Each sector has its own
+ * <code>int</code> column, the sectors an entity has objects in are kept as a
+ * bitmask per row, and all IDs are stored as UTF-8 bytes in one shared arena.
+ * A table can be cleared and refilled, so iterating the pages of a harvest
+ * allocates nothing per row.
+ *
+ * @author Michael Büchner
+ */
+public class EntityTable {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final SECTOR[] SECTORS = SECTOR.values();
+    private static final byte[] GND_HTTP = "http://d-nb.info/gnd/".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] GND_HTTPS = "https://d-nb.info/gnd/".getBytes(StandardCharsets.US_ASCII);
+    // length of IDs of DDB entities
+    private static final int DDB_ID_LENGTH = 32;
+
+    private int size;
+    private final int[][] counts;
+    private byte[] sectors;
+    private int[] idOffsets;
+    private int[] idLengths;
+    private int[] variantOffsets;
+    private int[] variantLengths;
+    private byte[] arena;
+    private int arenaSize;
+
+    /**
+     * Create a table.
+     *
+     * @param capacity Initial count of rows
+     */
+    public EntityTable(int capacity) {
+        capacity = Math.max(1, capacity);
+        counts = new int[SECTORS.length][capacity];
+        sectors = new byte[capacity];
+        idOffsets = new int[capacity];
+        idLengths = new int[capacity];
+        variantOffsets = new int[capacity];
+        variantLengths = new int[capacity];
+        arena = new byte[capacity * 32];
+    }
+
+    /**
+     * Remove all rows but keep the allocated memory.
+     */
+    public void clear() {
+        size = 0;
+        arenaSize = 0;
+    }
+
+    /**
+     * @return Count of rows
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Append the docs of a Solr response to the table.
+     *
+     * @param body Raw JSON response of the DDB API
+     * @return Count of appended rows
+     * @throws IOException
+     */
+    public int appendDocs(byte[] body) throws IOException {
+        final int start = size;
+        try (final JsonParser jp = JSON_FACTORY.createParser(body)) {
+            if (jp.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Response of DDB API is not a JSON object");
+            }
+            while (jp.nextToken() == JsonToken.FIELD_NAME) {
+                final String field = jp.currentName();
+                jp.nextToken();
+                if ("response".equals(field) && jp.currentToken() == JsonToken.START_OBJECT) {
+                    while (jp.nextToken() == JsonToken.FIELD_NAME) {
+                        final String rfield = jp.currentName();
+                        jp.nextToken();
+                        if ("docs".equals(rfield) && jp.currentToken() == JsonToken.START_ARRAY) {
+                            while (jp.nextToken() == JsonToken.START_OBJECT) {
+                                appendDoc(jp);
+                            }
+                        } else {
+                            jp.skipChildren();
+                        }
+                    }
+                } else {
+                    jp.skipChildren();
+                }
+            }
+        }
+        return size - start;
+    }
+
+    private void appendDoc(JsonParser jp) throws IOException {
+        ensureCapacity(size + 1);
+        final int row = size;
+        for (int[] column : counts) {
+            column[row] = 0;
+        }
+        sectors[row] = 0;
+        idOffsets[row] = arenaSize;
+        idLengths[row] = 0;
+        variantOffsets[row] = -1;
+        variantLengths[row] = 0;
+
+        while (jp.nextToken() == JsonToken.FIELD_NAME) {
+            final String field = jp.currentName();
+            final JsonToken token = jp.nextToken();
+            if ("id".equals(field) && token == JsonToken.VALUE_STRING) {
+                idOffsets[row] = arenaSize;
+                idLengths[row] = appendText(jp);
+            } else if ("variant_id".equals(field) && token == JsonToken.START_ARRAY) {
+                while (jp.nextToken() != JsonToken.END_ARRAY) {
+                    if (variantOffsets[row] == -1 && jp.currentToken() == JsonToken.VALUE_STRING) {
+                        variantOffsets[row] = arenaSize;
+                        variantLengths[row] = appendText(jp);
+                    } else {
+                        jp.skipChildren();
+                    }
+                }
+            } else if (token == JsonToken.VALUE_NUMBER_INT) {
+                final SECTOR sector = getSector(field);
+                if (sector != null) {
+                    final int count = jp.getIntValue();
+                    counts[sector.ordinal()][row] = count;
+                    if (count > 0) {
+                        sectors[row] |= (byte) (1 << sector.ordinal());
+                    }
+                }
+            } else {
+                jp.skipChildren();
+            }
+        }
+        size++;
+    }
+
+    private static SECTOR getSector(String jsonKey) {
+        for (SECTOR sector : SECTORS) {
+            if (sector.getJsonKey().equals(jsonKey)) {
+                return sector;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Encode the current text token as UTF-8 into the arena without creating
+     * a String.
+     */
+    private int appendText(JsonParser jp) throws IOException {
+        final char[] chars = jp.getTextCharacters();
+        final int offset = jp.getTextOffset();
+        final int length = jp.getTextLength();
+        ensureArena(arenaSize + length * 3);
+        final int start = arenaSize;
+        for (int i = offset; i < offset + length; ++i) {
+            final char c = chars[i];
+            if (c < 0x80) {
+                arena[arenaSize++] = (byte) c;
+            } else if (c < 0x800) {
+                arena[arenaSize++] = (byte) (0xC0 | (c >> 6));
+                arena[arenaSize++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < offset + length && Character.isLowSurrogate(chars[i + 1])) {
+                final int cp = Character.toCodePoint(c, chars[++i]);
+                arena[arenaSize++] = (byte) (0xF0 | (cp >> 18));
+                arena[arenaSize++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                arena[arenaSize++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                arena[arenaSize++] = (byte) (0x80 | (cp & 0x3F));
+            } else {
+                arena[arenaSize++] = (byte) (0xE0 | (c >> 12));
+                arena[arenaSize++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                arena[arenaSize++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        return arenaSize - start;
+    }
+
+    private void ensureCapacity(int rows) {
+        if (rows <= sectors.length) {
+            return;
+        }
+        final int capacity = Math.max(rows, sectors.length * 2);
+        for (int i = 0; i < counts.length; ++i) {
+            counts[i] = Arrays.copyOf(counts[i], capacity);
+        }
+        sectors = Arrays.copyOf(sectors, capacity);
+        idOffsets = Arrays.copyOf(idOffsets, capacity);
+        idLengths = Arrays.copyOf(idLengths, capacity);
+        variantOffsets = Arrays.copyOf(variantOffsets, capacity);
+        variantLengths = Arrays.copyOf(variantLengths, capacity);
+    }
+
+    private void ensureArena(int bytes) {
+        if (bytes > arena.length) {
+            arena = Arrays.copyOf(arena, Math.max(bytes, arena.length * 2));
+        }
+    }
+
+    /**
+     * @param row Row
+     * @param sector Sector
+     * @return <code>true</code> if the entity has objects in the sector
+     */
+    public boolean hasCount(int row, SECTOR sector) {
+        return (sectors[row] & (1 << sector.ordinal())) != 0;
+    }
+
+    /**
+     * @param row Row
+     * @return Bitmask of the sectors the entity has objects in, bit
+     * <code>n</code> stands for the sector with ordinal <code>n</code>
+     */
+    public int getSectors(int row) {
+        return sectors[row] & 0xFF;
+    }
+
+    /**
+     * @param row Row
+     * @param sector Sector
+     * @return Count of objects of the entity in the sector
+     */
+    public int getCount(int row, SECTOR sector) {
+        return counts[sector.ordinal()][row];
+    }
+
+    /**
+     * @param row Row
+     * @return ID of the entity as returned by the DDB API
+     */
+    public String getId(int row) {
+        return new String(arena, idOffsets[row], idLengths[row], StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param row Row
+     * @return <code>true</code> if the ID of the entity is a GND URI
+     */
+    public boolean hasGndId(int row) {
+        return getGndPrefixLength(idOffsets[row], idLengths[row]) > 0;
+    }
+
+    /**
+     * Write the GND-ID of an entity whose ID is a GND URI.
+     *
+     * @param row Row
+     * @param out Stream to write the UTF-8 bytes of the GND-ID to
+     * @throws IOException
+     */
+    public void writeGndId(int row, OutputStream out) throws IOException {
+        final int prefix = getGndPrefixLength(idOffsets[row], idLengths[row]);
+        out.write(arena, idOffsets[row] + prefix, idLengths[row] - prefix);
+    }
+
+    /**
+     * Get the GND-ID of the first variant ID of a DDB entity, which has to be
+     * resolved by Entity Facts.
+     *
+     * @param row Row
+     * @return GND-ID or <code>null</code> if the entity is no DDB entity with
+     * a GND variant ID
+     */
+    public String getVariantGndId(int row) {
+        if (idLengths[row] != DDB_ID_LENGTH || variantOffsets[row] == -1) {
+            return null;
+        }
+        final int prefix = getGndPrefixLength(variantOffsets[row], variantLengths[row]);
+        if (prefix == 0) {
+            return null;
+        }
+        return new String(arena, variantOffsets[row] + prefix, variantLengths[row] - prefix, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return GND-IDs of all variant IDs which have to be resolved by Entity
+     * Facts
+     */
+    public Set<String> getVariantGndIds() {
+        final Set<String> ids = new HashSet<>();
+        for (int row = 0; row < size; ++row) {
+            final String id = getVariantGndId(row);
+            if (id != null) {
+                ids.add(id);
+            }
+        }
+        return ids;
+    }
+
+    private int getGndPrefixLength(int offset, int length) {
+        if (startsWithIgnoreCase(offset, length, GND_HTTP)) {
+            return GND_HTTP.length;
+        } else if (startsWithIgnoreCase(offset, length, GND_HTTPS)) {
+            return GND_HTTPS.length;
+        }
+        return 0;
+    }
+
+    private boolean startsWithIgnoreCase(int offset, int length, byte[] prefix) {
+        if (length < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; ++i) {
+            int b = arena[offset + i];
+            if (b >= 'A' && b <= 'Z') {
+                b += 'a' - 'A';
+            }
+            if (b != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Compare two rows in the order of the DDB API query (count DESC, id ASC).
+     * IDs are compared by their UTF-8 bytes, which is the order Solr sorts
+     * string fields in.
+     *
+     * @param row Row of this table
+     * @param other Other table
+     * @param otherRow Row of the other table
+     * @return Negative if this row comes first, positive if the other row
+     * comes first
+     */
+    public int compare(int row, EntityTable other, int otherRow) {
+        final int c1 = counts[SECTOR.ALL.ordinal()][row];
+        final int c2 = other.counts[SECTOR.ALL.ordinal()][otherRow];
+        if (c1 != c2) {
+            return Integer.compare(c2, c1);
+        }
+        return Arrays.compareUnsigned(
+                arena, idOffsets[row], idOffsets[row] + idLengths[row],
+                other.arena, other.idOffsets[otherRow], other.idOffsets[otherRow] + other.idLengths[otherRow]);
+    }
+}
@@ -0,0 +1,214 @@
+/* 
+ * Copyright 2019-2026 Michael Büchner, Deutsche Digitale Bibliothek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.ddb.labs.beagen.backend.helper;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Gzip stream which compresses on its own worker thread. Written bytes are
+ * collected in batches, which are handed over to the worker through a bounded
+ * queue. The buffers of the batches are recycled, so writing allocates
+ * nothing. Several streams can compress in parallel on different cores while
+ * one thread writes to all of them.
+ *
+ * @author Michael Büchner
+ */
+public class AsyncGzipOutputStream extends OutputStream {
+
+    // size of a batch handed over to the worker
+    private static final int BATCH_SIZE = 64 * 1024;
+    private static final Batch END = new Batch(0);
+
+    private final BlockingQueue<Batch> full;
+    private final BlockingQueue<Batch> free;
+    private final Thread worker;
+    private final OutputStream target;
+    private final MessageDigest digest;
+    private Batch current;
+    // count of uncompressed bytes written
+    private long size;
+    private volatile Throwable error;
+    private boolean closed;
+
+    /**
+     * Create a stream and start its worker.
+     *
+     * @param name Name of the worker thread
+     * @param target Stream to write the compressed data to, closed by the
+     * worker when this stream is closed
+     * @param queueSize Maximum count of batches waiting for compression
+     */
+    public AsyncGzipOutputStream(String name, OutputStream target, int queueSize) {
+        this(name, target, queueSize, null);
+    }
+
+    /**
+     * Create a stream and start its worker, which also updates a digest with
+     * the uncompressed data. The digest is complete when this stream is
+     * closed.
+     *
+     * @param name Name of the worker thread
+     * @param target Stream to write the compressed data to, closed by the
+     * worker when this stream is closed
+     * @param queueSize Maximum count of batches waiting for compression
+     * @param digest Digest of the uncompressed data, can be null
+     */
+    public AsyncGzipOutputStream(String name, OutputStream target, int queueSize, MessageDigest digest) {
+        queueSize = Math.max(1, queueSize);
+        this.target = target;
+        this.digest = digest;
+        this.full = new ArrayBlockingQueue<>(queueSize + 1);
+        this.free = new ArrayBlockingQueue<>(queueSize + 1);
+        for (int i = 0; i < queueSize; ++i) {
+            free.add(new Batch(BATCH_SIZE));
+        }
+        this.current = new Batch(BATCH_SIZE);
+        this.worker = new Thread(this::compress, "gzip-" + name);
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    private void compress() {
+        // END is taken only once, finishing the gzip stream can still fail
+        boolean ended = false;
+        try (final OutputStream gzip = new GZIPOutputStream(target, BATCH_SIZE)) {
+            for (Batch batch; (batch = full.take()) != END;) {
+                if (digest != null) {
+                    digest.update(batch.data, 0, batch.length);
+                }
+                gzip.write(batch.data, 0, batch.length);
+                recycle(batch);
+            }
+            ended = true;
+        } catch (Throwable t) {
+            error = t;
+            if (ended) {
+                return;
+            }
+            // keep recycling batches, so the writing thread is never blocked
+            try {
+                for (Batch batch; (batch = full.take()) != END;) {
+                    recycle(batch);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void recycle(Batch batch) throws InterruptedException {
+        batch.length = 0;
+        free.put(batch);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (current.length == current.data.length) {
+            ship();
+        }
+        current.data[current.length++] = (byte) b;
+        size++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        size += len;
+        while (len > 0) {
+            if (current.length == current.data.length) {
+                ship();
+            }
+            final int n = Math.min(len, current.data.length - current.length);
+            System.arraycopy(b, off, current.data, current.length, n);
+            current.length += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    private void ship() throws IOException {
+        checkError();
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        try {
+            full.put(current);
+            current = free.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for compression");
+        }
+    }
+
+    private void checkError() throws IOException {
+        if (error != null) {
+            throw new IOException("Could not compress data. " + error.getMessage(), error);
+        }
+    }
+
+    /**
+     * Hand over the remaining bytes, wait until the worker has finished the
+     * gzip stream and closed the target.
+     *
+     * @throws IOException If compressing or writing failed
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            if (current.length > 0) {
+                ship();
+            }
+        } finally {
+            closed = true;
+            try {
+                full.put(END);
+                worker.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for compression");
+            }
+        }
+        checkError();
+    }
+
+    /**
+     * @return Count of uncompressed bytes written to this stream
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Buffer of bytes handed over to the worker
+     */
+    private static class Batch {
+
+        private final byte[] data;
+        private int length;
+
+        private Batch(int size) {
+            this.data = new byte[size];
+        }
+    }
+}
@@ -0,0 +1,406 @@
+/* 
+ * Copyright 2019-2026 Michael Büchner, Deutsche Digitale Bibliothek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.ddb.labs.beagen.backend.helper;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Line based delta between two Beacon files. A delta is an edit script which
+ * walks through the base file once from the beginning to the end:
+ * <ul>
+ * <li><code>=n</code> copies the next n lines of the base file</li>
+ * <li><code>-n</code> skips the next n lines of the base file</li>
+ * <li><code>+line</code> inserts a line</li>
+ * </ul>
+ * Lines of the base file left after the last command are skipped. Beacon
+ * files are ordered by count, so an entity whose count changed is removed at
+ * its old position and inserted at its new one.
+ *
+ * @author Michael Büchner
+ */
+public class BeaconDelta {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private BeaconDelta() {
+    }
+
+    /**
+     * Create the delta of two Beacon files. Only hashes of the lines and IDs
+     * of the base file are held in memory. Different lines with equal hashes
+     * lead to a wrong delta, so it should be checked with
+     * {@link #verify(Source, Source, Source)}.
+     *
+     * @param base Uncompressed lines of the base file
+     * @param target Uncompressed lines of the new file
+     * @param delta Stream to write the delta to, it is not closed
+     * @return Statistics of the delta
+     * @throws IOException
+     */
+    public static Stats create(Source base, Source target, OutputStream delta) throws IOException {
+
+        final Stats stats = new Stats();
+        final LineIndex lines = new LineIndex();
+        final LineIndex ids = new LineIndex();
+
+        try (final BufferedReader reader = open(base)) {
+            for (String line; (line = readNonCommentLine(reader)) != null; stats.baseLines++) {
+                lines.putIfAbsent(hash(line, line.length()), stats.baseLines);
+                ids.putIfAbsent(hash(line, idLength(line)), stats.baseLines);
+            }
+        }
+
+        final Writer writer = new BufferedWriter(new OutputStreamWriter(delta, StandardCharsets.UTF_8), BUFFER_SIZE);
+        try (final BufferedReader reader = open(target)) {
+            // next line of the base file
+            int cursor = 0;
+            // count of lines to copy, which are not written yet
+            int copy = 0;
+
+            for (String line; (line = readNonCommentLine(reader)) != null;) {
+                final int position = lines.get(hash(line, line.length()));
+                if (position >= cursor) {
+                    if (position > cursor) {
+                        copy = writeCommand(writer, '=', copy);
+                        writeCommand(writer, '-', position - cursor);
+                    }
+                    ++copy;
+                    cursor = position + 1;
+                    stats.unchanged++;
+                } else {
+                    copy = writeCommand(writer, '=', copy);
+                    writer.write('+');
+                    writer.write(line);
+                    writer.write('\n');
+                    if (ids.get(hash(line, idLength(line))) >= 0) {
+                        stats.changed++;
+                    } else {
+                        stats.added++;
+                    }
+                }
+            }
+            writeCommand(writer, '=', copy);
+        }
+        writer.flush();
+
+        stats.removed = stats.baseLines - stats.unchanged - stats.changed;
+        return stats;
+    }
+
+    /**
+     * Check if a delta applied to its base file results in the new file.
+     *
+     * @param base Uncompressed lines of the base file
+     * @param delta Uncompressed delta
+     * @param target Uncompressed lines of the new file
+     * @return <code>true</code> if all lines are equal
+     * @throws IOException
+     */
+    public static boolean verify(Source base, Source delta, Source target) throws IOException {
+        try (final BufferedReader patched = new BufferedReader(new InputStreamReader(apply(base.open(), delta.open()), StandardCharsets.UTF_8), BUFFER_SIZE);
+                final BufferedReader expected = open(target)) {
+            while (true) {
+                final String l1 = readNonCommentLine(patched);
+                final String l2 = readNonCommentLine(expected);
+                if (l1 == null || l2 == null) {
+                    return l1 == null && l2 == null;
+                } else if (!l1.equals(l2)) {
+                    return false;
+                }
+            }
+        }
+    }
+
+    /**
+     * Apply a delta to its base file. Both are read while the result is read,
+     * so neither has to be held in memory.
+     *
+     * @param base Uncompressed lines of the base file
+     * @param delta Uncompressed delta
+     * @return Uncompressed lines of the new file
+     */
+    public static InputStream apply(InputStream base, InputStream delta) {
+        return new PatchedInputStream(base, delta);
+    }
+
+    private static BufferedReader open(Source source) throws IOException {
+        return new BufferedReader(new InputStreamReader(source.open(), StandardCharsets.UTF_8), BUFFER_SIZE);
+    }
+
+    private static String readNonCommentLine(BufferedReader reader) throws IOException {
+        String line;
+        do {
+            line = reader.readLine();
+        } while (line != null && line.startsWith("#"));
+        return line;
+    }
+
+    private static int writeCommand(Writer writer, char command, int count) throws IOException {
+        if (count > 0) {
+            writer.write(command);
+            writer.write(Integer.toString(count));
+            writer.write('\n');
+        }
+        return 0;
+    }
+
+    /**
+     * Length of the ID of a line (<code>id|count</code> or <code>id</code>)
+     */
+    private static int idLength(String line) {
+        final int i = line.indexOf('|');
+        return i < 0 ? line.length() : i;
+    }
+
+    /**
+     * 64 bit FNV-1a hash of the first characters of a line
+     */
+    private static long hash(String line, int length) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < length; ++i) {
+            h ^= line.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return h == 0 ? 1 : h;
+    }
+
+    /**
+     * Source of a stream, which can be opened more than once
+     */
+    @FunctionalInterface
+    public interface Source {
+
+        InputStream open() throws IOException;
+    }
+
+    /**
+     * Statistics of a delta
+     */
+    public static class Stats {
+
+        private int baseLines;
+        private int unchanged;
+        private int added;
+        private int removed;
+        private int changed;
+
+        /**
+         * @return Count of lines of the base file without comments
+         */
+        public int getBaseLines() {
+            return baseLines;
+        }
+
+        /**
+         * @return Count of lines in both files
+         */
+        public int getUnchanged() {
+            return unchanged;
+        }
+
+        /**
+         * @return Count of IDs only in the new file
+         */
+        public int getAdded() {
+            return added;
+        }
+
+        /**
+         * @return Count of IDs only in the base file
+         */
+        public int getRemoved() {
+            return removed;
+        }
+
+        /**
+         * @return Count of IDs in both files with a different count
+         */
+        public int getChanged() {
+            return changed;
+        }
+
+        @Override
+        public String toString() {
+            return added + " added, " + removed + " removed, " + changed + " changed and " + unchanged + " unchanged";
+        }
+    }
+
+    /**
+     * Open addressing hash map of line hashes to line positions
+     */
+    private static class LineIndex {
+
+        private long[] keys = new long[1 << 16];
+        private int[] values = new int[1 << 16];
+        private int size;
+
+        void putIfAbsent(long key, int value) {
+            if ((size + 1) * 2 > keys.length) {
+                grow();
+            }
+            final int mask = keys.length - 1;
+            int i = (int) (key ^ (key >>> 32)) & mask;
+            while (keys[i] != 0) {
+                if (keys[i] == key) {
+                    return;
+                }
+                i = (i + 1) & mask;
+            }
+            keys[i] = key;
+            values[i] = value;
+            size++;
+        }
+
+        int get(long key) {
+            final int mask = keys.length - 1;
+            int i = (int) (key ^ (key >>> 32)) & mask;
+            while (keys[i] != 0) {
+                if (keys[i] == key) {
+                    return values[i];
+                }
+                i = (i + 1) & mask;
+            }
+            return -1;
+        }
+
+        private void grow() {
+            final long[] oldKeys = keys;
+            final int[] oldValues = values;
+            keys = new long[oldKeys.length * 2];
+            values = new int[oldValues.length * 2];
+            size = 0;
+            for (int i = 0; i < oldKeys.length; ++i) {
+                if (oldKeys[i] != 0) {
+                    putIfAbsent(oldKeys[i], oldValues[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Stream of the lines of a base file with a delta applied
+     */
+    private static class PatchedInputStream extends InputStream {
+
+        private final BufferedReader base;
+        private final BufferedReader delta;
+        private byte[] line = new byte[0];
+        private int pos;
+        // count of lines of the base file still to copy
+        private int copy;
+
+        PatchedInputStream(InputStream base, InputStream delta) {
+            this.base = new BufferedReader(new InputStreamReader(base, StandardCharsets.UTF_8), BUFFER_SIZE);
+            this.delta = new BufferedReader(new InputStreamReader(delta, StandardCharsets.UTF_8), BUFFER_SIZE);
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (pos == line.length && !next()) {
+                return -1;
+            }
+            return line[pos++] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (pos == line.length && !next()) {
+                return -1;
+            }
+            final int n = Math.min(len, line.length - pos);
+            System.arraycopy(line, pos, b, off, n);
+            pos += n;
+            return n;
+        }
+
+        /**
+         * Move to the next line of the result.
+         *
+         * @return <code>false</code> at the end of the result
+         */
+        private boolean next() throws IOException {
+            while (true) {
+                if (copy > 0) {
+                    copy--;
+                    return setLine(readBaseLine());
+                }
+
+                final String command = delta.readLine();
+                if (command == null) {
+                    return false;
+                } else if (command.startsWith("+")) {
+                    return setLine(command.substring(1));
+                } else if (command.startsWith("=")) {
+                    copy = parseCount(command);
+                } else if (command.startsWith("-")) {
+                    for (int i = parseCount(command); i > 0; --i) {
+                        readBaseLine();
+                    }
+                } else {
+                    throw new IOException("Invalid command in delta: " + command);
+                }
+            }
+        }
+
+        /**
+         * Next line of the base file, comment lines are not counted.
+         */
+        private String readBaseLine() throws IOException {
+            final String l = readNonCommentLine(base);
+            if (l == null) {
+                throw new IOException("Base file of delta ended unexpectedly");
+            }
+            return l;
+        }
+
+        private static int parseCount(String command) throws IOException {
+            try {
+                return Integer.parseInt(command.substring(1));
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid command in delta: " + command);
+            }
+        }
+
+        private boolean setLine(String l) {
+            final byte[] bytes = l.getBytes(StandardCharsets.UTF_8);
+            line = Arrays.copyOf(bytes, bytes.length + 1);
+            line[bytes.length] = '\n';
+            pos = 0;
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                base.close();
+            } finally {
+                delta.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,61 @@
+/* 
+ * Copyright 2019-2026 Michael Büchner, Deutsche Digitale Bibliothek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.ddb.labs.beagen.backend.helper;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Store of immutable payloads, which are addressed by the SHA-256 of their
+ * content. Storing the same content twice results in the same key and is
+ * stored only once.
+ *
+ * @author Michael Büchner
+ */
+public interface BlobStore {
+
+    /**
+     * Store a payload.
+     *
+     * @param content Stream of the payload, it is read to the end but not
+     * closed
+     * @return Key of the payload (SHA-256 as hex string)
+     * @throws IOException
+     */
+    String put(InputStream content) throws IOException;
+
+    /**
+     * @param key Key of a payload
+     * @return Stream of the payload
+     * @throws IOException If the payload does not exist or cannot be read
+     */
+    InputStream get(String key) throws IOException;
+
+    /**
+     * @param key Key of a payload
+     * @return Size of the payload in bytes
+     * @throws IOException If the payload does not exist
+     */
+    long size(String key) throws IOException;
+
+    /**
+     * Delete a payload, if it exists.
+     *
+     * @param key Key of a payload
+     * @throws IOException
+     */
+    void delete(String key) throws IOException;
+}
@@ -0,0 +1,59 @@
+/* 
+ * Copyright 2019-2026 Michael Büchner, Deutsche Digitale Bibliothek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.ddb.labs.beagen.backend.helper;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+/**
+ * Factory of the configured {@link BlobStore}
+ *
+ * @author Michael Büchner
+ */
+public class BlobStores {
+
+    private static final String BEAGEN_BLOBSTORE = "beagen.blobstore";
+    private static final String BEAGEN_BLOBSTORE_PATH = "beagen.blobstore.path";
+
+    private static BlobStore instance;
+    private static boolean initialized;
+
+    private BlobStores() {
+    }
+
+    /**
+     * Get the configured blob store, <code>file</code> for a
+     * {@link FileBlobStore} or <code>database</code> to store payloads in the
+     * database.
+     *
+     * @return Blob store or null if payloads are stored in the database
+     * @throws IOException
+     */
+    public static synchronized BlobStore getInstance() throws IOException {
+        if (!initialized) {
+            final String store = Configuration.get().getValue(BEAGEN_BLOBSTORE);
+            if (store == null || store.isBlank() || store.trim().equalsIgnoreCase("database")) {
+                instance = null;
+            } else if (store.trim().equalsIgnoreCase("file")) {
+                instance = new FileBlobStore(Paths.get(Configuration.get().getValue(BEAGEN_BLOBSTORE_PATH)));
+            } else {
+                throw new IOException("Unknown blob store " + store);
+            }
+            initialized = true;
+        }
+        return instance;
+    }
+}
@@ -69,6 +69,14 @@ public class Configuration {
         return PROPERTIES.getProperty(key);
     }
 
+    public int getValueAsInt(String key, int defaultValue) {
+        try {
+            return Integer.parseInt(PROPERTIES.getProperty(key, Integer.toString(defaultValue)).trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
     public void setValue(String key, String value) {
         PROPERTIES.setProperty(key, value);
     }
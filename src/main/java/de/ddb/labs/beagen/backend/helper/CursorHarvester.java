@@ -0,0 +1,268 @@
+/* 
+ * Copyright 2019-2026 Michael Büchner, Deutsche Digitale Bibliothek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.ddb.labs.beagen.backend.helper;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Pipelined harvester for a Solr cursor chain of the DDB API. A producer
+ * thread follows the <code>nextCursorMark</code> and keeps up to a fixed
+ * number of raw pages in a bounded queue, while the consumer parses and writes
+ * the previous ones. Several harvesters can share a {@link Semaphore} to bound
+ * the count of concurrent requests to the DDB API.
+ *
+ * @author Michael Büchner
+ */
+@Slf4j
+public class CursorHarvester implements AutoCloseable {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final Page END = new Page(new byte[0], 0, 0, null);
+
+    private final String baseUrl;
+    private final BlockingQueue<Page> queue;
+    private final Semaphore requests;
+    private final Thread producer;
+    private volatile Exception error;
+    private volatile boolean closed;
+    private boolean finished;
+
+    // statistics
+    private volatile long networkNanos;
+    private long waitNanos;
+    private final long started;
+
+    /**
+     * Start harvesting a cursor chain.
+     *
+     * @param name Name of the harvest, used for the producer thread
+     * @param baseUrl Query URL without <code>cursorMark</code>
+     * @param prefetch Maximum count of pages fetched in advance
+     * @param requests Permits for concurrent requests to the DDB API
+     */
+    public CursorHarvester(String name, String baseUrl, int prefetch, Semaphore requests) {
+        this.baseUrl = baseUrl;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, prefetch));
+        this.requests = requests;
+        this.producer = new Thread(this::produce, "harvester-" + name);
+        this.producer.setDaemon(true);
+        this.started = System.nanoTime();
+        this.producer.start();
+    }
+
+    private void produce() {
+        String cursorMark = "*";
+        int harvested = 0;
+        try {
+            while (!closed) {
+                final String url = baseUrl + "&cursorMark=" + URLEncoder.encode(cursorMark, StandardCharsets.UTF_8);
+                log.debug("Query: {}", url);
+
+                final byte[] body;
+                requests.acquire();
+                final long start = System.nanoTime();
+                try (final InputStream is = DDBApi.httpGet(url)) {
+                    if (is == null) {
+                        throw new IOException("Could not get data from DDB API for " + url);
+                    }
+                    body = is.readAllBytes();
+                } finally {
+                    networkNanos += System.nanoTime() - start;
+                    requests.release();
+                }
+
+                final Page page = scan(body);
+                harvested += page.getSize();
+                queue.put(page);
+
+                if (page.getNextCursorMark() == null
+                        || page.getNextCursorMark().equals(cursorMark)
+                        || page.getSize() == 0
+                        || harvested >= page.getNumFound()) {
+                    break;
+                }
+                cursorMark = page.getNextCursorMark();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } catch (Exception e) {
+            error = e;
+        }
+
+        try {
+            queue.put(END);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Read numFound, nextCursorMark and the count of docs of a Solr response
+     * without binding it to objects.
+     */
+    private static Page scan(byte[] body) throws IOException {
+        int numFound = 0;
+        int size = 0;
+        String nextCursorMark = null;
+
+        try (final JsonParser jp = JSON_FACTORY.createParser(body)) {
+            if (jp.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Response of DDB API is not a JSON object");
+            }
+            while (jp.nextToken() == JsonToken.FIELD_NAME) {
+                final String field = jp.currentName();
+                jp.nextToken();
+                if ("nextCursorMark".equals(field)) {
+                    nextCursorMark = jp.getValueAsString();
+                } else if ("response".equals(field) && jp.currentToken() == JsonToken.START_OBJECT) {
+                    while (jp.nextToken() == JsonToken.FIELD_NAME) {
+                        final String rfield = jp.currentName();
+                        jp.nextToken();
+                        if ("numFound".equals(rfield)) {
+                            numFound = jp.getValueAsInt(0);
+                        } else if ("docs".equals(rfield) && jp.currentToken() == JsonToken.START_ARRAY) {
+                            while (jp.nextToken() != JsonToken.END_ARRAY) {
+                                jp.skipChildren();
+                                size++;
+                            }
+                        } else {
+                            jp.skipChildren();
+                        }
+                    }
+                } else {
+                    jp.skipChildren();
+                }
+            }
+        }
+
+        return new Page(body, numFound, size, nextCursorMark);
+    }
+
+    /**
+     * Get the next page of the cursor chain. Blocks until the producer has
+     * fetched it.
+     *
+     * @return Next page or <code>null</code> if the cursor chain is exhausted
+     * @throws IOException If the producer failed to get a page
+     */
+    public Page next() throws IOException {
+        if (finished) {
+            return null;
+        }
+        final long start = System.nanoTime();
+        try {
+            final Page page = queue.take();
+            if (page == END) {
+                finished = true;
+                if (error != null) {
+                    throw error instanceof IOException ioe ? ioe : new IOException(error.getMessage(), error);
+                }
+                return null;
+            }
+            return page;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Harvest of " + baseUrl + " was interrupted", e);
+        } finally {
+            waitNanos += System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * @return Time the producer spent on requests to the DDB API
+     */
+    public long getNetworkMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(networkNanos);
+    }
+
+    /**
+     * @return Time the consumer waited for the next page
+     */
+    public long getWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(waitNanos);
+    }
+
+    /**
+     * @return Time since start of the harvest
+     */
+    public long getWallMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        producer.interrupt();
+    }
+
+    /**
+     * One raw page of a Solr cursor chain
+     */
+    public static class Page {
+
+        private final byte[] body;
+        private final int numFound;
+        private final int size;
+        private final String nextCursorMark;
+
+        private Page(byte[] body, int numFound, int size, String nextCursorMark) {
+            this.body = body;
+            this.numFound = numFound;
+            this.size = size;
+            this.nextCursorMark = nextCursorMark;
+        }
+
+        /**
+         * @return Raw JSON response
+         */
+        public byte[] getBody() {
+            return body;
+        }
+
+        /**
+         * @return Total count of documents of the query
+         */
+        public int getNumFound() {
+            return numFound;
+        }
+
+        /**
+         * @return Count of documents in this page
+         */
+        public int getSize() {
+            return size;
+        }
+
+        /**
+         * @return Cursor mark of the following page
+         */
+        public String getNextCursorMark() {
+            return nextCursorMark;
+        }
+    }
+}
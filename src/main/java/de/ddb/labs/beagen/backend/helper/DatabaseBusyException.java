@@ -0,0 +1,42 @@
+/* 
+ * Copyright 2019-2026 Michael Büchner, Deutsche Digitale Bibliothek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.ddb.labs.beagen.backend.helper;
+
+import javax.persistence.PersistenceException;
+
+/**
+ * Thrown if no database connection is available within the connection
+ * timeout, because all of them are in use. Requests failing with it can be
+ * retried later.
+ *
+ * @author Michael Büchner
+ */
+public class DatabaseBusyException extends PersistenceException {
+
+    private final long timeout;
+
+    public DatabaseBusyException(long timeout) {
+        super("No database connection available within " + timeout + " ms");
+        this.timeout = timeout;
+    }
+
+    /**
+     * @return Time in milliseconds waited for a database connection
+     */
+    public long getTimeout() {
+        return timeout;
+    }
+}
@@ -15,10 +15,20 @@
  */
 package de.ddb.labs.beagen.backend.helper;
 
+import de.ddb.labs.beagen.backend.GndRedirect;
+import de.ddb.labs.beagen.backend.GndRedirectController;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import okhttp3.OkHttpClient;
-import okhttp3.Request;
-import okhttp3.Response;
 import lombok.extern.slf4j.Slf4j;
 
 /**
@@ -28,17 +38,29 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public class EntityFacts {
 
-    private static final String EF_URL = "http://hub.culturegraph.org/entityfacts/";
     private static final String EF_URL_SSL = "https://hub.culturegraph.org/entityfacts/";
     private static final OkHttpClient client = new OkHttpClient.Builder()
             .connectTimeout(5, TimeUnit.SECONDS)
             .writeTimeout(5, TimeUnit.SECONDS)
             .readTimeout(10, TimeUnit.SECONDS)
             .build();
+    // time to live of resolved GND-IDs in days
+    private static final String BEAGEN_ENTITYFACTS_TTL = "beagen.entityfacts.ttl";
+    // resolver settings
+    private static final String BEAGEN_ENTITYFACTS_URL = "beagen.entityfacts.url";
+    private static final String BEAGEN_ENTITYFACTS_CONCURRENCY = "beagen.entityfacts.concurrency";
+    private static final String BEAGEN_ENTITYFACTS_RATELIMIT = "beagen.entityfacts.ratelimit";
+    private static final String BEAGEN_ENTITYFACTS_BREAKER_WINDOW = "beagen.entityfacts.breaker.window";
+    private static final String BEAGEN_ENTITYFACTS_BREAKER_THRESHOLD = "beagen.entityfacts.breaker.threshold";
+    private static final String BEAGEN_ENTITYFACTS_BREAKER_PAUSE = "beagen.entityfacts.breaker.pause";
+    // resolved GND-IDs, backed by the database
+    private static final Map<String, GndRedirect> CACHE = new ConcurrentHashMap<>();
+    private static boolean cacheLoaded = false;
+    private static EntityFactsResolver resolver;
 
     private EntityFacts() {
     }
-    
+
     /**
      * Checks the current ID of GND data.
      *
@@ -46,26 +68,95 @@ public class EntityFacts {
      * @return
      */
     public static String getGndId(String id) {
+        return getGndIds(List.of(id)).get(id);
+    }
 
-        try {
-            final Request request = new Request.Builder()
-                    .url(EF_URL_SSL + id)
-                    .head()
-                    .build();
-            final Response response = client.newCall(request).execute();
-            return cleanEfId(response.request().url().toString());
-        } catch (Exception ex) {
-            log.warn("Could not get data from Entity Facts. {}", ex.getMessage());
-            return id;
+    /**
+     * Checks the current IDs of GND data. Resolutions are cached in the
+     * database and only checked again at Entity Facts after their time to
+     * live. IDs which are not cached are resolved concurrently.
+     *
+     * @param ids Only the GND Ids (not the complete URIs)
+     * @return Current GND-ID of each ID. If an ID could not be resolved, it is
+     * mapped to the last known resolution or to itself.
+     */
+    public static Map<String, String> getGndIds(Collection<String> ids) {
+
+        final long ttl = getTtl();
+        loadCache(ttl);
+
+        final Map<String, String> result = new HashMap<>();
+        final Set<String> misses = new HashSet<>();
+        for (String id : ids) {
+            final GndRedirect cached = CACHE.get(id);
+            if (cached != null && !cached.isExpired(ttl)) {
+                result.put(id, cached.getResolvedId());
+            } else {
+                misses.add(id);
+            }
         }
+
+        if (misses.isEmpty()) {
+            return result;
+        }
+
+        final Map<String, String> resolved = getResolver().resolve(misses);
+        final Date now = new Date();
+        final List<GndRedirect> redirects = new ArrayList<>(resolved.size());
+        for (String id : misses) {
+            final String resolvedId = resolved.get(id);
+            if (resolvedId != null) {
+                final GndRedirect redirect = new GndRedirect(id, resolvedId, now);
+                CACHE.put(id, redirect);
+                redirects.add(redirect);
+                result.put(id, resolvedId);
+            } else {
+                final GndRedirect cached = CACHE.get(id);
+                result.put(id, cached != null ? cached.getResolvedId() : id);
+            }
+        }
+        GndRedirectController.saveGndRedirects(redirects);
+
+        return result;
+    }
+
+    private static synchronized void loadCache(long ttl) {
+        if (cacheLoaded) {
+            return;
+        }
+        for (GndRedirect redirect : GndRedirectController.getGndRedirects(new Date(System.currentTimeMillis() - ttl))) {
+            CACHE.put(redirect.getSourceId(), redirect);
+        }
+        cacheLoaded = true;
+        log.info("Loaded {} resolved GND-IDs from database.", CACHE.size());
     }
 
-    private static String cleanEfId(String id) {
-        if (id.startsWith(EF_URL)) {
-            id = id.substring(EF_URL.length());
-        } else if (id.startsWith(EF_URL_SSL)) {
-            id = id.substring(EF_URL_SSL.length());
+    private static synchronized EntityFactsResolver getResolver() {
+        if (resolver == null) {
+            try {
+                final Configuration cfg = Configuration.get();
+                final String url = cfg.getValue(BEAGEN_ENTITYFACTS_URL);
+                resolver = new EntityFactsResolver(
+                        url == null || url.isBlank() ? EF_URL_SSL : url,
+                        client,
+                        cfg.getValueAsInt(BEAGEN_ENTITYFACTS_CONCURRENCY, 16),
+                        cfg.getValueAsInt(BEAGEN_ENTITYFACTS_RATELIMIT, 20),
+                        cfg.getValueAsInt(BEAGEN_ENTITYFACTS_BREAKER_WINDOW, 50),
+                        cfg.getValueAsInt(BEAGEN_ENTITYFACTS_BREAKER_THRESHOLD, 50),
+                        cfg.getValueAsInt(BEAGEN_ENTITYFACTS_BREAKER_PAUSE, 60));
+            } catch (IOException e) {
+                log.warn("Could not read configuration of Entity Facts resolver. Using defaults. {}", e.getMessage());
+                resolver = new EntityFactsResolver(EF_URL_SSL, client, 16, 20, 50, 50, 60);
+            }
+        }
+        return resolver;
+    }
+
+    private static long getTtl() {
+        try {
+            return TimeUnit.DAYS.toMillis(Configuration.get().getValueAsInt(BEAGEN_ENTITYFACTS_TTL, 30));
+        } catch (IOException e) {
+            return TimeUnit.DAYS.toMillis(30);
         }
-        return id;
     }
 }
@@ -0,0 +1,283 @@
+/* 
+ * Copyright 2019-2026 Michael Büchner, Deutsche Digitale Bibliothek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.ddb.labs.beagen.backend.helper;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Resolves GND-IDs to their current GND-IDs at Entity Facts. Lookups run
+ * concurrently on virtual threads under a rate limit, and concurrent lookups
+ * of the same ID share one request. If too many requests fail, a circuit
+ * breaker stops sending requests for a while and IDs stay unresolved.
+ *
+ * @author Michael Büchner
+ */
+@Slf4j
+public class EntityFactsResolver {
+
+    private final String baseUrl;
+    private final OkHttpClient client;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Map<String, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>();
+    private final Semaphore permits;
+    private final RateLimiter rateLimiter;
+    private final CircuitBreaker breaker;
+
+    /**
+     * Create a resolver.
+     *
+     * @param baseUrl URL of Entity Facts, the GND-ID is appended to it
+     * @param client HTTP client
+     * @param concurrency Maximum count of concurrent requests
+     * @param rateLimit Maximum count of requests per second
+     * @param breakerWindow Count of last requests the error rate is computed
+     * of
+     * @param breakerThreshold Error rate in percent which opens the circuit
+     * breaker
+     * @param breakerPause Seconds until a request is tried again after the
+     * circuit breaker opened
+     */
+    public EntityFactsResolver(String baseUrl, OkHttpClient client, int concurrency, int rateLimit, int breakerWindow, int breakerThreshold, int breakerPause) {
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl : baseUrl + "/";
+        this.client = client;
+        this.permits = new Semaphore(Math.max(1, concurrency));
+        this.rateLimiter = new RateLimiter(rateLimit);
+        this.breaker = new CircuitBreaker(breakerWindow, breakerThreshold, TimeUnit.SECONDS.toNanos(breakerPause));
+    }
+
+    /**
+     * Resolve a batch of GND-IDs concurrently.
+     *
+     * @param ids GND-IDs (not the complete URIs)
+     * @return Current GND-ID of each ID which could be resolved. IDs which
+     * could not be resolved are missing.
+     */
+    public Map<String, String> resolve(Collection<String> ids) {
+        final Map<String, CompletableFuture<String>> lookups = new HashMap<>();
+        for (String id : ids) {
+            lookups.computeIfAbsent(id, this::lookup);
+        }
+
+        final Map<String, String> result = new HashMap<>();
+        for (Map.Entry<String, CompletableFuture<String>> lookup : lookups.entrySet()) {
+            final String resolvedId = lookup.getValue().join();
+            if (resolvedId != null) {
+                result.put(lookup.getKey(), resolvedId);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Resolve one GND-ID.
+     *
+     * @param id GND-ID (not the complete URI)
+     * @return Current GND-ID, the ID itself if Entity Facts does not know it,
+     * or <code>null</code> if it could not be resolved for now
+     */
+    public String resolve(String id) {
+        return lookup(id).join();
+    }
+
+    private CompletableFuture<String> lookup(String id) {
+        final CompletableFuture<String> future = new CompletableFuture<>();
+        final CompletableFuture<String> running = inFlight.putIfAbsent(id, future);
+        if (running != null) {
+            return running;
+        }
+        executor.execute(() -> {
+            try {
+                future.complete(request(id));
+            } catch (Exception e) {
+                future.complete(null);
+            } finally {
+                inFlight.remove(id, future);
+            }
+        });
+        return future;
+    }
+
+    private String request(String id) throws InterruptedException {
+        permits.acquire();
+        try {
+            rateLimiter.acquire();
+            if (!breaker.allowRequest()) {
+                return null;
+            }
+            // every request let through has to be recorded, otherwise a
+            // failed probe would keep the breaker open forever
+            boolean recorded = false;
+            try {
+                final Request request = new Request.Builder()
+                        .url(baseUrl + id)
+                        .head()
+                        .build();
+                try (final Response response = client.newCall(request).execute()) {
+                    recorded = true;
+                    if (response.code() >= 500 || response.code() == 408 || response.code() == 429) {
+                        breaker.onFailure();
+                        log.warn("Could not get data from Entity Facts for {}. HTTP status code is {}.", id, response.code());
+                        return null;
+                    }
+                    breaker.onSuccess();
+                    // any other client error is a definitive answer, the ID
+                    // is not redirected and resolved to itself
+                    return response.isSuccessful() ? cleanEfId(response.request().url().toString()) : id;
+                }
+            } catch (IOException ex) {
+                log.warn("Could not get data from Entity Facts for {}. {}", id, ex.getMessage());
+                return null;
+            } finally {
+                if (!recorded) {
+                    breaker.onFailure();
+                }
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    private String cleanEfId(String url) {
+        final String path = baseUrl.substring(baseUrl.indexOf("://") + 3);
+        final int i = url.indexOf(path);
+        return i == -1 ? url.substring(url.lastIndexOf('/') + 1) : url.substring(i + path.length());
+    }
+
+    /**
+     * Spaces requests evenly to a maximum count per second
+     */
+    private static class RateLimiter {
+
+        private final long interval;
+        private long next = System.nanoTime();
+
+        private RateLimiter(int perSecond) {
+            this.interval = perSecond > 0 ? TimeUnit.SECONDS.toNanos(1) / perSecond : 0;
+        }
+
+        private void acquire() throws InterruptedException {
+            if (interval == 0) {
+                return;
+            }
+            final long wait;
+            synchronized (this) {
+                final long now = System.nanoTime();
+                next = Math.max(next, now);
+                wait = next - now;
+                next += interval;
+            }
+            if (wait > 0) {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
+        }
+    }
+
+    /**
+     * Opens if the error rate of the last requests exceeds a threshold. While
+     * open, no requests are sent. After a pause a single request is let
+     * through, which closes the breaker again on success.
+     */
+    private static class CircuitBreaker {
+
+        private final boolean[] window;
+        private final int threshold;
+        private final long pause;
+        private int position;
+        private int calls;
+        private int failures;
+        private long openedAt;
+        private boolean open;
+        private boolean probing;
+
+        private CircuitBreaker(int window, int threshold, long pause) {
+            this.window = new boolean[Math.max(1, window)];
+            this.threshold = threshold;
+            this.pause = pause;
+        }
+
+        private synchronized boolean allowRequest() {
+            if (!open) {
+                return true;
+            }
+            if (!probing && System.nanoTime() - openedAt >= pause) {
+                probing = true;
+                return true;
+            }
+            return false;
+        }
+
+        private synchronized void onSuccess() {
+            if (open) {
+                log.info("Entity Facts is available again. Circuit breaker closed.");
+                open = false;
+                probing = false;
+                reset();
+                return;
+            }
+            record(false);
+        }
+
+        private synchronized void onFailure() {
+            if (open) {
+                probing = false;
+                openedAt = System.nanoTime();
+                return;
+            }
+            record(true);
+            if (calls == window.length && failures * 100 >= threshold * calls) {
+                log.warn("{} of the last {} requests to Entity Facts failed. Circuit breaker opened, GND-IDs stay unresolved for now.", failures, calls);
+                open = true;
+                openedAt = System.nanoTime();
+            }
+        }
+
+        private void record(boolean failure) {
+            if (calls == window.length) {
+                if (window[position]) {
+                    failures--;
+                }
+            } else {
+                calls++;
+            }
+            window[position] = failure;
+            if (failure) {
+                failures++;
+            }
+            position = (position + 1) % window.length;
+        }
+
+        private void reset() {
+            Arrays.fill(window, false);
+            position = 0;
+            calls = 0;
+            failures = 0;
+        }
+    }
+}
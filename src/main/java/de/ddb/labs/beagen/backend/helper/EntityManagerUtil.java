@@ -15,21 +15,69 @@
  */
 package de.ddb.labs.beagen.backend.helper;
 
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
+import javax.persistence.EntityTransaction;
 import javax.persistence.Persistence;
+import javax.persistence.PersistenceException;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
 
 /**
  *
  * @author Michael Büchner
  */
+@Slf4j
 public class EntityManagerUtil {
 
+    private static final String POOL_SIZE = "hibernate.hikari.maximumPoolSize";
+    private static final String POOL_TIMEOUT = "hibernate.hikari.connectionTimeout";
+
     private static EntityManagerUtil instance;
-    private final EntityManagerFactory EMF;
+    private volatile EntityManagerFactory EMF;
+    // open entity managers, limited to the size of the connection pool, so
+    // callers wait in order here instead of timing out in the pool
+    private final Semaphore permits;
+    private final int poolSize;
+    private final long timeout;
 
     private EntityManagerUtil() {
         EMF = Persistence.createEntityManagerFactory("BeagenFile");
+        poolSize = Integer.parseInt(EMF.getProperties().getOrDefault(POOL_SIZE, "10").toString());
+        permits = new Semaphore(poolSize, true);
+        timeout = Long.parseLong(EMF.getProperties().getOrDefault(POOL_TIMEOUT, "30000").toString());
+        migrate();
+    }
+
+    /**
+     * Schema changes the automatic schema update of Hibernate does not do
+     * for existing tables.
+     */
+    private void migrate() {
+        final EntityManager em = EMF.createEntityManager();
+        final EntityTransaction tx = em.getTransaction();
+        try {
+            tx.begin();
+            // content is empty for Beacon files in the blob store
+            em.createNativeQuery("ALTER TABLE BeaconFile ALTER COLUMN content SET NULL").executeUpdate();
+            tx.commit();
+        } catch (Exception e) {
+            log.warn("Could not migrate database schema. {}", e.getMessage());
+        } finally {
+            if (tx.isActive()) {
+                tx.rollback();
+            }
+            em.close();
+        }
     }
 
     public static synchronized EntityManagerUtil getInstance() {
@@ -39,8 +87,138 @@ public class EntityManagerUtil {
         return EntityManagerUtil.instance;
     }
 
+    /**
+     * Create an entity manager. At most as many entity managers as the
+     * connection pool has connections are open at the same time, further
+     * callers wait until one of them is closed.
+     *
+     * @return Entity manager, which has to be closed by the caller
+     * @throws DatabaseBusyException If no entity manager is closed within the
+     * connection timeout of the pool
+     */
     public EntityManager getEntityManager() {
-        return EMF.createEntityManager();
+        acquire();
+
+        final EntityManager em;
+        try {
+            em = EMF.createEntityManager();
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+
+        // release the permit, when the entity manager is closed
+        final AtomicBoolean closed = new AtomicBoolean();
+        return (EntityManager) Proxy.newProxyInstance(EntityManager.class.getClassLoader(), new Class<?>[]{EntityManager.class}, (proxy, method, args) -> {
+            try {
+                return method.invoke(em, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            } finally {
+                if (method.getName().equals("close") && closed.compareAndSet(false, true)) {
+                    permits.release();
+                }
+            }
+        });
+    }
+
+    /**
+     * Run read-only queries on a pooled connection without an entity manager
+     * and transaction. The connection is limited like entity managers and
+     * returned to the pool afterwards.
+     *
+     * @param <T> Type of the result
+     * @param work Queries to run
+     * @return Result of the queries
+     * @throws SQLException
+     * @throws DatabaseBusyException If no connection is available within the
+     * connection timeout of the pool
+     */
+    public <T> T read(ConnectionCallback<T> work) throws SQLException {
+        acquire();
+        try {
+            final ConnectionProvider provider = EMF.unwrap(SessionFactoryImplementor.class).getServiceRegistry().getService(ConnectionProvider.class);
+            final Connection connection = provider.getConnection();
+            try {
+                return work.apply(connection);
+            } finally {
+                provider.closeConnection(connection);
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void acquire() {
+        try {
+            if (!permits.tryAcquire(timeout, TimeUnit.MILLISECONDS)) {
+                throw new DatabaseBusyException(timeout);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new PersistenceException("Interrupted while waiting for a database connection", e);
+        }
+    }
+
+    /**
+     * Get the size of the database file.
+     *
+     * @return Size in bytes or -1 if it is unknown
+     */
+    public long getDatabaseSize() {
+        final EntityManager em = EMF.createEntityManager();
+        try {
+            final Object size = em.createNativeQuery("SELECT SETTING_VALUE FROM INFORMATION_SCHEMA.SETTINGS WHERE SETTING_NAME = 'info.FILE_SIZE'").getSingleResult();
+            return Long.parseLong(size.toString());
+        } catch (Exception e) {
+            log.warn("Could not get size of database file. {}", e.getMessage());
+            return -1;
+        } finally {
+            em.close();
+        }
+    }
+
+    /**
+     * Compact the database file with <code>SHUTDOWN COMPACT</code>. This
+     * closes the database and all of its connections, so the entity manager
+     * factory is created again afterwards. All permits are taken before, so
+     * the database is closed only after all entity managers and connections
+     * in use were closed, and other threads wait until it is open again.
+     *
+     * @throws SQLException If the database is still in use after the
+     * connection timeout of the pool or it could not be compacted
+     */
+    public synchronized void compact() throws SQLException {
+        try {
+            if (!permits.tryAcquire(poolSize, timeout, TimeUnit.MILLISECONDS)) {
+                throw new SQLException("Database is still in use after " + timeout + " ms, so it is not compacted");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for database connections", e);
+        }
+        try {
+            shutdownCompact();
+        } finally {
+            permits.release(poolSize);
+        }
+    }
+
+    private void shutdownCompact() throws SQLException {
+        final ConnectionProvider provider = EMF.unwrap(SessionFactoryImplementor.class).getServiceRegistry().getService(ConnectionProvider.class);
+        final Connection connection = provider.getConnection();
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("SHUTDOWN COMPACT");
+        } finally {
+            try {
+                provider.closeConnection(connection);
+            } catch (SQLException e) {
+                // the connection was already closed by the shutdown
+                log.debug("Could not close connection after shutdown. {}", e.getMessage());
+            }
+            EMF.close();
+            EMF = Persistence.createEntityManagerFactory("BeagenFile");
+        }
     }
 
     public void shutdown() {
@@ -48,4 +226,15 @@ public class EntityManagerUtil {
             EMF.close();
         }
     }
+
+    /**
+     * Queries on a JDBC connection
+     *
+     * @param <T> Type of the result
+     */
+    @FunctionalInterface
+    public interface ConnectionCallback<T> {
+
+        T apply(Connection connection) throws SQLException;
+    }
 }
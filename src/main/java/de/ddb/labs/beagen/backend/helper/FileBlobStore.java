@@ -0,0 +1,117 @@
+/* 
+ * Copyright 2019-2026 Michael Büchner, Deutsche Digitale Bibliothek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.ddb.labs.beagen.backend.helper;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Blob store of files on local disk. A payload is written to a temporary file
+ * first and then moved to <code>{root}/{first two characters of key}/{key}</code>,
+ * so a payload file is never seen incomplete and never changed afterwards.
+ *
+ * @author Michael Büchner
+ */
+@Slf4j
+public class FileBlobStore implements BlobStore {
+
+    private final Path root;
+
+    /**
+     * @param root Directory of the payload files
+     * @throws IOException
+     */
+    public FileBlobStore(Path root) throws IOException {
+        this.root = root;
+        Files.createDirectories(root);
+    }
+
+    @Override
+    public String put(InputStream content) throws IOException {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+
+        final Path tmp = Files.createTempFile(root, "upload-", ".tmp");
+        try {
+            try (final FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE);
+                    final OutputStream out = Channels.newOutputStream(channel)) {
+                new DigestInputStream(content, digest).transferTo(out);
+                channel.force(true);
+            }
+
+            final String key = HexFormat.of().formatHex(digest.digest());
+            final Path target = getPath(key);
+            if (Files.exists(target)) {
+                // same content already stored
+                log.debug("Blob {} already exists.", key);
+            } else {
+                Files.createDirectories(target.getParent());
+                Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+            }
+            return key;
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    @Override
+    public InputStream get(String key) throws IOException {
+        try {
+            return Files.newInputStream(getPath(key));
+        } catch (NoSuchFileException e) {
+            throw new FileNotFoundException("Blob " + key + " does not exist");
+        }
+    }
+
+    @Override
+    public long size(String key) throws IOException {
+        try {
+            return Files.size(getPath(key));
+        } catch (NoSuchFileException e) {
+            throw new FileNotFoundException("Blob " + key + " does not exist");
+        }
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        Files.deleteIfExists(getPath(key));
+    }
+
+    private Path getPath(String key) throws IOException {
+        if (!key.matches("[0-9a-f]{64}")) {
+            throw new IOException("Invalid blob key " + key);
+        }
+        return root.resolve(key.substring(0, 2)).resolve(key);
+    }
+}
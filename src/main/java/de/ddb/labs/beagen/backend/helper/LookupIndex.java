@@ -0,0 +1,303 @@
+/* 
+ * Copyright 2019-2026 Michael Büchner, Deutsche Digitale Bibliothek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.ddb.labs.beagen.backend.helper;
+
+import de.ddb.labs.beagen.backend.data.EntityTable;
+import de.ddb.labs.beagen.backend.data.SECTOR;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Memory-mapped index of the GND-IDs of one type with their count of objects
+ * per sector. The index file consists of a header, the offsets of the sorted
+ * GND-IDs, one <code>int</code> column of counts per sector and the UTF-8
+ * bytes of all GND-IDs, so a GND-ID is looked up by a binary search on the
+ * mapped file without reading it into the heap.
+ *
+ * @author Michael Büchner
+ */
+public class LookupIndex {
+
+    private static final SECTOR[] SECTORS = SECTOR.values();
+    private static final int MAGIC = 0x42474C49;
+    private static final int VERSION = 1;
+    // magic, version, count of GND-IDs, count of sectors
+    private static final int HEADER_SIZE = 16;
+
+    private final Path path;
+    private final MappedByteBuffer buffer;
+    private final int size;
+    private final int countsStart;
+    private final int idsStart;
+
+    private LookupIndex(Path path, MappedByteBuffer buffer) throws IOException {
+        this.path = path;
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("No lookup index of version " + VERSION);
+        }
+        if (buffer.getInt(12) != SECTORS.length) {
+            throw new IOException("Lookup index has " + buffer.getInt(12) + " instead of " + SECTORS.length + " sectors");
+        }
+        this.size = buffer.getInt(8);
+        this.countsStart = HEADER_SIZE + (size + 1) * 4;
+        this.idsStart = countsStart + SECTORS.length * size * 4;
+        if (size < 0 || idsStart > buffer.capacity() || (long) idsStart + buffer.getInt(HEADER_SIZE + size * 4) != buffer.capacity()) {
+            throw new IOException("Lookup index is truncated");
+        }
+    }
+
+    /**
+     * Map an index file into memory. The mapping stays valid when the file is
+     * replaced afterwards.
+     *
+     * @param path Index file
+     * @return Index
+     * @throws IOException
+     */
+    public static LookupIndex open(Path path) throws IOException {
+        try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Lookup index " + path + " is too large");
+            }
+            return new LookupIndex(path, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * @return Count of GND-IDs
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Find a GND-ID by binary search.
+     *
+     * @param gndId GND-ID
+     * @return Row of the GND-ID or -1 if it is not in the index
+     */
+    public int find(String gndId) {
+        final byte[] key = gndId.getBytes(StandardCharsets.UTF_8);
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            final int cmp = compare(mid, key);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param row Row as returned by {@link #find(String)}
+     * @param sector Sector
+     * @return Count of objects of the GND-ID in the sector
+     */
+    public int getCount(int row, SECTOR sector) {
+        return buffer.getInt(countsStart + (sector.ordinal() * size + row) * 4);
+    }
+
+    private int compare(int row, byte[] key) {
+        final int start = buffer.getInt(HEADER_SIZE + row * 4);
+        final int length = buffer.getInt(HEADER_SIZE + (row + 1) * 4) - start;
+        final int common = Math.min(length, key.length);
+        for (int i = 0; i < common; ++i) {
+            final int cmp = Byte.toUnsignedInt(buffer.get(idsStart + start + i)) - Byte.toUnsignedInt(key[i]);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return length - key.length;
+    }
+
+    @Override
+    public String toString() {
+        return path.toString();
+    }
+
+    /**
+     * Collects the GND-IDs of harvested entities in the order they arrive and
+     * writes them sorted as index file. Entities with the same GND-ID, e.g.
+     * DDB entities resolved to the same GND-ID, are merged by adding their
+     * counts.
+     */
+    public static class Writer {
+
+        private final Arena ids = new Arena();
+        private int[] offsets = new int[1024];
+        private final int[][] counts = new int[SECTORS.length][1024];
+        private int size;
+
+        /**
+         * Add an entity.
+         *
+         * @param page Page of entities
+         * @param row Row of the entity in the page
+         * @param gndId Resolved GND-ID of the entity or null if the ID of the
+         * entity is a GND URI
+         * @throws IOException
+         */
+        public void add(EntityTable page, int row, byte[] gndId) throws IOException {
+            if (size + 1 >= offsets.length) {
+                offsets = Arrays.copyOf(offsets, offsets.length * 2);
+                for (int i = 0; i < counts.length; ++i) {
+                    counts[i] = Arrays.copyOf(counts[i], offsets.length);
+                }
+            }
+            offsets[size] = ids.size();
+            if (gndId == null) {
+                page.writeGndId(row, ids);
+            } else {
+                ids.write(gndId);
+            }
+            for (SECTOR sector : SECTORS) {
+                counts[sector.ordinal()][size] = page.getCount(row, sector);
+            }
+            ++size;
+        }
+
+        /**
+         * @return Count of added entities
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Write the index file.
+         *
+         * @param path Index file, which is replaced
+         * @return Count of distinct GND-IDs
+         * @throws IOException
+         */
+        public int write(Path path) throws IOException {
+            offsets[size] = ids.size();
+            final int[] order = sort();
+
+            // first row in order of every distinct GND-ID
+            final int[] groups = new int[size + 1];
+            int distinct = 0;
+            for (int i = 0; i < size; ++i) {
+                if (i == 0 || compare(order[i - 1], order[i]) != 0) {
+                    groups[distinct++] = i;
+                }
+            }
+            groups[distinct] = size;
+
+            try (final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 64 * 1024))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(distinct);
+                out.writeInt(SECTORS.length);
+
+                int offset = 0;
+                for (int g = 0; g < distinct; ++g) {
+                    out.writeInt(offset);
+                    offset += length(order[groups[g]]);
+                }
+                out.writeInt(offset);
+
+                for (int[] column : counts) {
+                    for (int g = 0; g < distinct; ++g) {
+                        long count = 0;
+                        for (int i = groups[g]; i < groups[g + 1]; ++i) {
+                            count += column[order[i]];
+                        }
+                        out.writeInt((int) Math.min(Integer.MAX_VALUE, count));
+                    }
+                }
+
+                final byte[] bytes = ids.array();
+                for (int g = 0; g < distinct; ++g) {
+                    final int row = order[groups[g]];
+                    out.write(bytes, offsets[row], length(row));
+                }
+            }
+            return distinct;
+        }
+
+        private int length(int row) {
+            return offsets[row + 1] - offsets[row];
+        }
+
+        /**
+         * Sort the rows by GND-ID with a bottom-up merge sort, which needs no
+         * boxing of the row numbers.
+         */
+        private int[] sort() {
+            int[] src = new int[size];
+            int[] dst = new int[size];
+            for (int i = 0; i < size; ++i) {
+                src[i] = i;
+            }
+            for (int width = 1; width < size; width *= 2) {
+                for (int low = 0; low < size; low += 2 * width) {
+                    final int mid = Math.min(low + width, size);
+                    final int high = Math.min(low + 2 * width, size);
+                    int i = low, j = mid, k = low;
+                    while (i < mid && j < high) {
+                        dst[k++] = compare(src[i], src[j]) <= 0 ? src[i++] : src[j++];
+                    }
+                    while (i < mid) {
+                        dst[k++] = src[i++];
+                    }
+                    while (j < high) {
+                        dst[k++] = src[j++];
+                    }
+                }
+                final int[] tmp = src;
+                src = dst;
+                dst = tmp;
+            }
+            return src;
+        }
+
+        private int compare(int a, int b) {
+            final byte[] bytes = ids.array();
+            return Arrays.compareUnsigned(bytes, offsets[a], offsets[a + 1], bytes, offsets[b], offsets[b + 1]);
+        }
+    }
+
+    /**
+     * Growable buffer of the UTF-8 bytes of all GND-IDs.
+     */
+    private static class Arena extends ByteArrayOutputStream {
+
+        private Arena() {
+            super(64 * 1024);
+        }
+
+        private byte[] array() {
+            return buf;
+        }
+    }
+}
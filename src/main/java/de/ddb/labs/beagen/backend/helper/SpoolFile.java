@@ -0,0 +1,115 @@
+/* 
+ * Copyright 2019-2026 Michael Büchner, Deutsche Digitale Bibliothek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.ddb.labs.beagen.backend.helper;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Temporary file to spool generated content to instead of keeping it in
+ * memory. The file is deleted when the spool file is closed.
+ *
+ * @author Michael Büchner
+ */
+@Slf4j
+public class SpoolFile implements AutoCloseable {
+
+    private static final String BEAGEN_TMPDIR = "beagen.tmpdir";
+    private final Path path;
+
+    /**
+     * Create an empty temporary file.
+     *
+     * @param prefix Prefix of the file name
+     * @throws IOException
+     */
+    public SpoolFile(String prefix) throws IOException {
+        final String dir = Configuration.get().getValue(BEAGEN_TMPDIR);
+        if (dir == null || dir.isBlank()) {
+            path = Files.createTempFile(prefix, ".tmp");
+        } else {
+            Files.createDirectories(Paths.get(dir));
+            path = Files.createTempFile(Paths.get(dir), prefix, ".tmp");
+        }
+    }
+
+    /**
+     * @return Stream to write the content, replacing the current one
+     * @throws IOException
+     */
+    public OutputStream getOutputStream() throws IOException {
+        return Channels.newOutputStream(FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING));
+    }
+
+    /**
+     * @return Stream to read the content from the beginning
+     * @throws IOException
+     */
+    public InputStream getInputStream() throws IOException {
+        return Files.newInputStream(path);
+    }
+
+    /**
+     * @return Stream to read the content from the beginning, which closes
+     * this spool file, and so deletes it, when it is closed
+     * @throws IOException
+     */
+    public InputStream getTransientInputStream() throws IOException {
+        return new FilterInputStream(getInputStream()) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    SpoolFile.this.close();
+                }
+            }
+        };
+    }
+
+    /**
+     * @return Size of the content in bytes
+     * @throws IOException
+     */
+    public long size() throws IOException {
+        return Files.size(path);
+    }
+
+    /**
+     * @return Path of the temporary file
+     */
+    public Path getPath() {
+        return path;
+    }
+
+    @Override
+    public void close() {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("Could not delete temporary file {}. {}", path, e.getMessage());
+        }
+    }
+}
@@ -15,38 +15,55 @@
  */
 package de.ddb.labs.beagen.backend.jobs;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.aayushatharva.brotli4j.Brotli4jLoader;
+import com.aayushatharva.brotli4j.encoder.BrotliOutputStream;
+import com.aayushatharva.brotli4j.encoder.Encoder;
 import de.ddb.labs.beagen.backend.BeaconFile;
 import de.ddb.labs.beagen.backend.BeaconFileController;
+import de.ddb.labs.beagen.backend.Generation;
+import de.ddb.labs.beagen.backend.LatestBeaconFiles;
+import de.ddb.labs.beagen.backend.LookupIndexes;
+import de.ddb.labs.beagen.backend.data.EntityTable;
 import de.ddb.labs.beagen.backend.data.SECTOR;
 import de.ddb.labs.beagen.backend.data.TYPE;
+import de.ddb.labs.beagen.backend.helper.AsyncGzipOutputStream;
+import de.ddb.labs.beagen.backend.helper.BeaconDelta;
+import de.ddb.labs.beagen.backend.helper.Configuration;
+import de.ddb.labs.beagen.backend.helper.CursorHarvester;
 import de.ddb.labs.beagen.backend.helper.DDBApi;
 import de.ddb.labs.beagen.backend.helper.EntityFacts;
 import de.ddb.labs.beagen.backend.helper.EntityManagerUtil;
+import de.ddb.labs.beagen.backend.helper.LookupIndex;
+import de.ddb.labs.beagen.backend.helper.SpoolFile;
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.BufferedWriter;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.io.SequenceInputStream;
 import java.net.URLEncoder;
-import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
-import java.text.ParseException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.EnumMap;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 import javax.persistence.EntityManager;
 import javax.persistence.EntityTransaction;
 import javax.persistence.PersistenceException;
-import lombok.Getter;
-import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import org.quartz.DisallowConcurrentExecution;
 import org.quartz.Job;
@@ -65,10 +82,32 @@ public class BeaconJob implements Job {
     private static final String URL = "https://api.deutsche-digitale-bibliothek.de/2";
     private static final EnumMap<TYPE, String> SEARCH = new EnumMap<>(TYPE.class);
 
-    private final ObjectMapper mapper = new ObjectMapper();
+    // count of pages fetched in advance
+    private static final String BEAGEN_HARVEST_PREFETCH = "beagen.harvest.prefetch";
+    // count of disjoint partitions of a query harvested in parallel
+    private static final String BEAGEN_HARVEST_PARTITIONS = "beagen.harvest.partitions";
+    // count of concurrent requests to the DDB API while harvesting
+    private static final String BEAGEN_HARVEST_CONCURRENCY = "beagen.harvest.concurrency";
 
     // count of entities per query
     private static final int ENTITYCOUNT = 10000;
+    // buffer size of Beacon file streams
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // count of batches waiting for compression per sector
+    private static final String BEAGEN_COMPRESSION_QUEUE = "beagen.compression.queue";
+    // store only the delta to the last Beacon file
+    private static final String BEAGEN_DELTA_ENABLED = "beagen.delta.enabled";
+    // maximum count of deltas until a full snapshot is stored again
+    private static final String BEAGEN_DELTA_SNAPSHOT = "beagen.delta.snapshot";
+    // quality of the Brotli variant of Beacon files (-1 = no Brotli variant)
+    private static final String BEAGEN_BROTLI_QUALITY = "beagen.brotli.quality";
+    // count of types generated at the same time
+    private static final String BEAGEN_JOB_PARALLELISM = "beagen.job.parallelism";
+    // shared by all types generated at the same time
+    private static Semaphore requests;
+    // held while a generation is published, the maintenance job deletes no
+    // Beacon files and content meanwhile
+    static final Object PUBLISH_LOCK = new Object();
 
     static {
         SEARCH.put(TYPE.PERSON, "/search/index/person/select?"
@@ -93,6 +132,8 @@ public class BeaconJob implements Job {
             + "&sort=id ASC";
 
     /**
+     * Generate the Beacon files of newspapers, organisations and persons
+     * concurrently and publish all of them together, once every type is done.
      *
      * @param context
      * @throws JobExecutionException
@@ -101,336 +142,820 @@ public class BeaconJob implements Job {
     public void execute(JobExecutionContext context) throws JobExecutionException {
         // Date                  
         final Date date = new Date();
-        executeNewspapers(date);
-        execute(TYPE.ORGANISATION, SECTOR.values(), date);
-        execute(TYPE.PERSON, SECTOR.values(), date);
-    }
-
-    public void executeNewspapers(Date date) {
-
-        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        int count = 0;
 
-        try (final InputStream is = DDBApi.httpGet(URL + NEWSPAPAER_SEARCH);
-                final BufferedReader reader = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8));
-                final BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(baos), StandardCharsets.UTF_8))) {
+        final List<GeneratedFile> newspapers = new ArrayList<>();
+        final List<GeneratedFile> organisations = new ArrayList<>();
+        final List<GeneratedFile> persons = new ArrayList<>();
+        // lookup indexes per type, written by the parallel generation
+        final Map<TYPE, Path> lookups = Collections.synchronizedMap(new EnumMap<>(TYPE.class));
 
-            boolean firstLine = true;
-            for (String line; (line = reader.readLine()) != null;) {
-                if (firstLine) {
-                    firstLine = false;
-                    continue;
-                }
-                bw.append(line);
-                bw.newLine();
-                count++;
+        try {
+            final JobGraph graph = new JobGraph(Configuration.get().getValueAsInt(BEAGEN_JOB_PARALLELISM, 3));
+            graph.add(TYPE.NEWSPAPER.getName(), () -> newspapers.addAll(generateNewspapers(date)));
+            graph.add(TYPE.ORGANISATION.getName(), () -> organisations.addAll(generate(TYPE.ORGANISATION, SECTOR.values(), date, lookups)));
+            graph.add(TYPE.PERSON.getName(), () -> persons.addAll(generate(TYPE.PERSON, SECTOR.values(), date, lookups)));
+            graph.add("publish", () -> {
+                final List<GeneratedFile> files = new ArrayList<>(newspapers);
+                files.addAll(organisations);
+                files.addAll(persons);
+                publish(files, lookups);
+                LatestBeaconFiles.refresh();
+            }, TYPE.NEWSPAPER.getName(), TYPE.ORGANISATION.getName(), TYPE.PERSON.getName());
+
+            if (!graph.run()) {
+                log.error("BEACON maker job finished with errors.");
             }
-        } catch (Exception ex) {
-            log.error("Error while processing entity data of Newspaper. {}", ex.getMessage());
+        } catch (IOException ex) {
+            throw new JobExecutionException(ex);
+        } finally {
+            close(newspapers);
+            close(organisations);
+            close(persons);
+            delete(lookups);
         }
+    }
 
+    public void executeNewspapers(Date date) {
+        final List<GeneratedFile> files = generateNewspapers(date);
         try {
-            baos.flush();
-        } catch (IOException ex) {
-            //nothing;
+            publish(files, Map.of());
+            LatestBeaconFiles.refresh();
+        } finally {
+            close(files);
         }
+    }
 
-        final BeaconFile bf = new BeaconFile(TYPE.NEWSPAPER, SECTOR.ALL, date, count, baos.toByteArray());
-        final List<BeaconFile> lastBeaconinDatabaseList = BeaconFileController.getBeaconFiles(TYPE.NEWSPAPER, SECTOR.ALL, true);
+    /**
+     * Execute the generation of the BEACON files
+     *
+     * @param type For which types
+     * @param sectors For which sectors
+     * @param date Date to set for BEACOn files
+     */
+    public void execute(TYPE type, SECTOR[] sectors, Date date) {
+        final Map<TYPE, Path> lookups = new EnumMap<>(TYPE.class);
+        final List<GeneratedFile> files = generate(type, sectors, date, lookups);
+        try {
+            publish(files, lookups);
+            LatestBeaconFiles.refresh();
+        } finally {
+            close(files);
+            delete(lookups);
+        }
+        log.info("BEACON maker job finished.");
+    }
 
-        if (lastBeaconinDatabaseList.isEmpty() || !bf.equals(lastBeaconinDatabaseList.get(0))) {
-            log.info("Writing {} entities of {} to database. Beacon file size is {}", count, SECTOR.ALL.getHumanName(), baos.size());
-            final EntityManager em = EntityManagerUtil.getInstance().getEntityManager();
-            final EntityTransaction tx = em.getTransaction();
-            tx.begin();
-            em.persist(bf);
-            tx.commit();
-            em.close();
-        } else {
-            log.warn("Beacon file {}/{} generated is equal to last beacon file in database, so it was NOT written to database.", TYPE.NEWSPAPER, SECTOR.ALL);
+    /**
+     * Generate the Beacon file of newspapers into a spool file.
+     *
+     * @param date Date to set for Beacon file
+     * @return Generated Beacon file, which has to be closed by the caller, or
+     * none if it could not be generated completely
+     */
+    private List<GeneratedFile> generateNewspapers(Date date) {
+
+        int count = 0;
+        final long size;
+
+        // fingerprint of the lines, computed while they are written
+        final MessageDigest digest = BeaconFile.newFingerprintDigest();
+
+        final SpoolFile spool;
+        try {
+            spool = new SpoolFile("beagen-newspaper-");
+        } catch (IOException ex) {
+            log.error("Error while writing Beacon file of Newspaper. {}", ex.getMessage());
+            return List.of();
         }
 
         try {
-            baos.close();
-        } catch (IOException e) {
-            //nothing
+            getRequests().acquire();
+            try {
+                final AsyncGzipOutputStream gzip = new AsyncGzipOutputStream("newspaper", spool.getOutputStream(), Configuration.get().getValueAsInt(BEAGEN_COMPRESSION_QUEUE, 8), digest);
+                try (final InputStream is = DDBApi.httpGet(URL + NEWSPAPAER_SEARCH);
+                        final BufferedReader reader = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8));
+                        final BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(gzip, StandardCharsets.UTF_8))) {
+
+                    boolean firstLine = true;
+                    for (String line; (line = reader.readLine()) != null;) {
+                        if (firstLine) {
+                            firstLine = false;
+                            continue;
+                        }
+                        bw.append(line);
+                        bw.append('\n');
+                        count++;
+                    }
+                } finally {
+                    gzip.close();
+                }
+                // the size is only known once the stream is completed
+                size = gzip.getSize();
+            } finally {
+                getRequests().release();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            log.error("Processing entity data of Newspaper was interrupted.");
+            spool.close();
+            return List.of();
+        } catch (Exception ex) {
+            log.error("Error while processing entity data of Newspaper. {}", ex.getMessage());
+            spool.close();
+            return List.of();
         }
+
+        final BeaconFile bf = new BeaconFile();
+        bf.setType(TYPE.NEWSPAPER);
+        bf.setSector(SECTOR.ALL);
+        bf.setCreated(date);
+        bf.setCount(count);
+        bf.setFingerprint(BeaconFile.toFingerprint(digest));
+        bf.setBodySize(size);
+        return List.of(new GeneratedFile(bf, spool));
     }
 
     /**
-     * Execute the generation of the BEACON files
+     * Generate the Beacon files of one type into spool files.
      *
      * @param type For which types
      * @param sectors For which sectors
-     * @param date Date to set for BEACOn files
+     * @param date Date to set for Beacon files
+     * @param lookups Lookup indexes per type, to which the staged lookup index
+     * of the type is added if all sectors are generated
+     * @return Generated Beacon files with at least one entity, which have to
+     * be closed by the caller
      */
-    public void execute(TYPE type, SECTOR[] sectors, Date date) {
+    private List<GeneratedFile> generate(TYPE type, SECTOR[] sectors, Date date, Map<TYPE, Path> lookups) {
         log.info("Start BEACON maker job for {}...", type);
         if (SEARCH.get(type) == null || SEARCH.get(type).isEmpty()) {
             log.warn("Could not generate search query for type {}. Generation of Beacon file(s) canceled.", type);
-            return;
+            return List.of();
         }
 
+        final List<GeneratedFile> files = new ArrayList<>();
+        // gzip compressed Beacon files are spooled to temporary files
+        final EnumMap<SECTOR, SpoolFile> spools = new EnumMap<>(SECTOR.class);
+        // each sector is compressed on its own worker thread
+        final EnumMap<SECTOR, AsyncGzipOutputStream> outputs = new EnumMap<>(SECTOR.class);
+        // fingerprints of the lines, computed by the compression workers
+        final EnumMap<SECTOR, MessageDigest> digests = new EnumMap<>(SECTOR.class);
+
         try {
-            final EnumMap<SECTOR, ByteArrayOutputStream> byteStreams = new EnumMap<>(SECTOR.class);
-            final EnumMap<SECTOR, BufferedWriter> writers = new EnumMap<>(SECTOR.class);
+            final int queueSize = Configuration.get().getValueAsInt(BEAGEN_COMPRESSION_QUEUE, 8);
 
-            // count of entities (person, org)
-            final EnumMap<SECTOR, Integer> counts = new EnumMap<>(SECTOR.class);
+            // count of entities (person, org) per sector
+            final int[] counts = new int[SECTOR.values().length];
 
             // init Beacon map
             for (SECTOR sector : sectors) {
-                byteStreams.put(sector, new ByteArrayOutputStream());
-                writers.put(sector, new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(byteStreams.get(sector)), StandardCharsets.UTF_8)));
-                counts.put(sector, 0);
+                spools.put(sector, new SpoolFile("beagen-" + type.getName().toLowerCase() + "-" + sector.getFileName() + "-"));
+                digests.put(sector, BeaconFile.newFingerprintDigest());
+                outputs.put(sector, new AsyncGzipOutputStream(type.getName().toLowerCase() + "-" + sector.getFileName(), spools.get(sector).getOutputStream(), queueSize, digests.get(sector)));
             }
 
-            final List<EntityCounts> data = getDataFromDdbApi(type);
-
             log.info("Start generating Beacon files of type {}...", type);
 
-            int count = 0;
-
-            for (final Iterator<EntityCounts> it = data.iterator(); it.hasNext();) {
-
-                if (count == data.size() - 1) {
-                    log.info("{} data processed: {}/{}", type, (count + 1), data.size());
-                } else if (count % 10000 == 0) {
-                    log.info("{} data processed: {}/{}", type, count, data.size());
-                }
-                count++;
-
-                final EntityCounts ex = it.next();
-
-                for (SECTOR sector : sectors) {
-
-                    if (ex.hasCount(sector)) {
-
-                        String id = ex.getId();
-                        if (id.toLowerCase().startsWith("http://d-nb.info/gnd/")) {
-                            id = id.substring(21);
-                        } else if (id.toLowerCase().startsWith("https://d-nb.info/gnd/")) {
-                            id = id.substring(22);
-                        } else if (id.length() == 32
-                                && !ex.getVariant_id().isEmpty()
-                                && ex.getVariant_id().get(0).toLowerCase().startsWith("http://d-nb.info/gnd/")) {
-                            id = EntityFacts.getGndId(ex.getVariant_id().get(0).substring(21));
-                        } else if (id.length() == 32
-                                && !ex.getVariant_id().isEmpty()
-                                && ex.getVariant_id().get(0).toLowerCase().startsWith("https://d-nb.info/gnd/")) {
-                            id = EntityFacts.getGndId(ex.getVariant_id().get(0).substring(22));
-                        } else {
-                            log.warn("Could not get any GND-ID of {}. That should never happen!", id);
-                            continue;
-                        }
-
-                        counts.put(sector, counts.get(sector) + 1);
-                        writers.get(sector).append(id);
-                        writers.get(sector).append("|" + ex.getCount(sector));
-                        writers.get(sector).newLine();
-                    }
-                }
-            }
-
+            // every entity is written out as soon as its page arrives, so only
+            // one page of entities per partition is held in memory at any time
+            final byte[] scratch = new byte[11];
+            // the lookup index is only complete if all sectors are generated
+            final LookupIndex.Writer index = sectors.length == SECTOR.values().length ? new LookupIndex.Writer() : null;
+            final int total = getDataFromDdbApi(type, (page, row, resolved) -> writeEntity(page, row, sectors, outputs, counts, resolved, scratch, index));
+            log.info("Got {} GND-URIs from DDB API", total);
             log.info("Done generating Beacon files of type {}.", type);
 
             for (SECTOR sector : sectors) {
-                writers.get(sector).close();
-                byteStreams.get(sector).flush();
-                if (counts.get(sector) > 0) {
+                outputs.get(sector).close();
+                if (counts[sector.ordinal()] > 0) {
                     final BeaconFile files_sector = new BeaconFile();
                     files_sector.setSector(sector);
                     files_sector.setType(type);
                     files_sector.setCreated(date);
-                    files_sector.setCount(counts.get(sector));
-                    files_sector.setContent(byteStreams.get(sector).toByteArray());
-
-                    final List<BeaconFile> lastBeaconinDatabaseList = BeaconFileController.getBeaconFiles(type, sector, true);
-                    if (lastBeaconinDatabaseList.isEmpty() || !files_sector.equals(lastBeaconinDatabaseList.get(0))) {
-                        log.info("Writing {} entities of {} to database. Beacon file size is {}", counts.get(sector), sector.getHumanName(), byteStreams.get(sector).size());
-                        final EntityManager em = EntityManagerUtil.getInstance().getEntityManager();
-                        final EntityTransaction tx = em.getTransaction();
-                        tx.begin();
-                        em.persist(files_sector);
-                        tx.commit();
-                        em.close();
-                    } else {
-                        log.warn("Beacon file {}/{} generated is equal to last beacon file in database, so it was NOT written to database.", type, sector);
-                    }
+                    files_sector.setCount(counts[sector.ordinal()]);
+                    files_sector.setFingerprint(BeaconFile.toFingerprint(digests.get(sector)));
+                    files_sector.setBodySize(outputs.get(sector).getSize());
+                    files.add(new GeneratedFile(files_sector, spools.remove(sector)));
+                }
+            }
+
+            if (index != null) {
+                final Path lookup = LookupIndexes.createStagingFile(type);
+                try {
+                    log.info("Wrote lookup index of type {} with {} GND-IDs.", type, index.write(lookup));
+                } catch (IOException e) {
+                    Files.deleteIfExists(lookup);
+                    throw e;
                 }
-                byteStreams.get(sector).close();
+                lookups.put(type, lookup);
             }
-        } catch (ParseException | IOException | PersistenceException ex) {
+        } catch (IOException ex) {
             log.error("Error while processing entity data. {}", ex.getMessage());
+            close(files);
+            files.clear();
+        } finally {
+            for (OutputStream output : outputs.values()) {
+                try {
+                    output.close();
+                } catch (IOException e) {
+                    // already logged
+                }
+            }
+            // spools of sectors without entities
+            for (SpoolFile spool : spools.values()) {
+                spool.close();
+            }
         }
 
-        log.info("BEACON maker job finished.");
+        return files;
     }
 
-    private List<EntityCounts> getDataFromDdbApi(TYPE type) throws IOException, ParseException {
+    /**
+     * Publish generated Beacon files to the database as one generation. The
+     * Beacon files are compared with the last ones and their deltas are
+     * created first. Then all of them are inserted in one short transaction,
+     * in which their inserts are batched, and their Brotli variants are
+     * compressed without holding a database connection. The Beacon files
+     * become visible together when the generation is published. If
+     * preparing or staging fails, no Beacon file of the run is published.
+     *
+     * The lookup indexes are published with the generation.
+     *
+     * @param files Generated Beacon files
+     * @param lookups Staged lookup indexes per type
+     */
+    private static void publish(List<GeneratedFile> files, Map<TYPE, Path> lookups) {
+        for (GeneratedFile file : files) {
+            try {
+                prepare(file);
+            } catch (IOException | PersistenceException ex) {
+                log.error("Generation of {} Beacon files is not published. Error while preparing Beacon file {}/{}. {}", files.size(), file.getBeaconFile().getType(), file.getBeaconFile().getSector(), ex.getMessage());
+                return;
+            }
+        }
 
-        final String baseUrl = URL + SEARCH.get(type);
+        synchronized (PUBLISH_LOCK) {
+            // streams read by the database on commit
+            final List<AutoCloseable> resources = new ArrayList<>();
+            final List<GeneratedFile> staged = new ArrayList<>();
+            final Generation generation = new Generation(new Date());
+            try {
+                for (GeneratedFile file : files) {
+                    // another generation could have been published meanwhile
+                    if (!file.isPreparedFor(getLast(file.getBeaconFile()))) {
+                        prepare(file);
+                    }
+                }
 
-        final List<EntityCounts> list = new ArrayList<>();
-        String nextCursorMark = "*";
+                final EntityManager em = EntityManagerUtil.getInstance().getEntityManager();
+                final EntityTransaction tx = em.getTransaction();
+                try {
+                    tx.begin();
+                    em.persist(generation);
+                    for (GeneratedFile file : files) {
+                        if (stage(em, generation, file, resources)) {
+                            staged.add(file);
+                        }
+                    }
+                    tx.commit();
+                } finally {
+                    if (tx.isActive()) {
+                        tx.rollback();
+                    }
+                    em.close();
+                }
+            } catch (IOException | PersistenceException ex) {
+                // the transaction is rolled back, so no Beacon file of the run
+                // is published and the lookup indexes stay as they are
+                log.error("Generation of {} Beacon files is not published. {}", files.size(), ex.getMessage());
+                return;
+            } finally {
+                close(resources);
+            }
 
-        while (true) {
-            final String url = baseUrl + "&cursorMark=" + URLEncoder.encode(nextCursorMark, Charset.forName("UTF-8"));
-            final InputStream is = DDBApi.httpGet(url);
-            log.debug("Query: {}", url);
+            storeBrotli(generation, staged);
 
-            final JsonNode doc = mapper.readTree(is);
-            final String nextCursorMarkLocal = doc.get("nextCursorMark").asText("");
-            if (nextCursorMarkLocal.equals(nextCursorMark)) {
-                nextCursorMark = "";
-            } else {
-                nextCursorMark = nextCursorMarkLocal;
+            if (BeaconFileController.publishGeneration(generation.getId())) {
+                log.info("Published generation {} with {} new Beacon files.", generation.getId(), staged.size());
+                LookupIndexes.publish(lookups);
             }
-            int totalCount = doc.get("response").get("numFound").asInt(0);
-            final JsonNode docsArray = doc.get("response").get("docs");
-            final List<EntityCounts> ec = Arrays.asList(mapper.treeToValue(docsArray, EntityCounts[].class));
-            list.addAll(ec);
-
-            if (list.size() % 10000 == 0) {
-                log.info("{} data from DDBapi downloaded: {}/{}", type, list.size(), totalCount);
-            } else if (list.size() == totalCount) {
-                // last logging
-                log.info("{} data from DDBapi downloaded: {}/{}", type, list.size(), list.size());
+        }
+    }
+
+    /**
+     * Compare a generated Beacon file with the last one of its type and
+     * sector and create the delta to it. This is done before the generation
+     * is staged, so no transaction is open meanwhile.
+     * In incremental mode only the delta to the last Beacon file is stored,
+     * except for every n-th generation, which is stored as full snapshot.
+     *
+     * @param file Generated Beacon file
+     * @throws IOException
+     */
+    private static void prepare(GeneratedFile file) throws IOException {
+        final BeaconFile bf = file.getBeaconFile();
+        final BeaconFile last = getLast(bf);
+        if (last != null && isEqual(last, bf, file.getSpool())) {
+            file.prepare(last, true, null);
+            return;
+        }
+
+        SpoolFile delta = null;
+        if (last != null
+                    && Boolean.parseBoolean(Configuration.get().getValue(BEAGEN_DELTA_ENABLED))
+                    && last.getDepth() < Configuration.get().getValueAsInt(BEAGEN_DELTA_SNAPSHOT, 7)) {
+            delta = createDelta(last, file.getSpool());
+        }
+        file.prepare(last, false, delta);
+    }
+
+    /**
+     * Get the last published Beacon file of the same type and sector.
+     *
+     * @param bf Beacon file
+     * @return Last Beacon file or null if there is none
+     */
+    private static BeaconFile getLast(BeaconFile bf) {
+        final List<BeaconFile> lastBeaconinDatabaseList = BeaconFileController.getBeaconFiles(bf.getType(), bf.getSector(), true);
+        return lastBeaconinDatabaseList.isEmpty() ? null : lastBeaconinDatabaseList.get(0);
+    }
+
+    private static void close(List<? extends AutoCloseable> resources) {
+        for (int i = resources.size() - 1; i >= 0; --i) {
+            try {
+                resources.get(i).close();
+            } catch (Exception ex) {
+                log.warn("Could not close {}. {}", resources.get(i), ex.getMessage());
             }
+        }
+    }
 
-            if (nextCursorMark.isBlank() || list.size() == totalCount) {
-                break;
+    /**
+     * Delete staged lookup indexes, which were not published.
+     */
+    private static void delete(Map<TYPE, Path> lookups) {
+        for (Path lookup : lookups.values()) {
+            try {
+                Files.deleteIfExists(lookup);
+            } catch (IOException e) {
+                log.warn("Could not delete lookup index {}. {}", lookup, e.getMessage());
             }
         }
-        log.info("Got {} GND-URIs from DDB API", list.size());
-        return list;
     }
 
-    private static class EntityCounts {
-
-        @Getter
-        @Setter
-        private String id;
-        @Getter
-        @Setter
-        private List<String> variant_id;
-        @Getter
-        @Setter
-        private int count;
-        @Getter
-        @Setter
-        private int count_sec_01;
-        @Getter
-        @Setter
-        private int count_sec_02;
-        @Getter
-        @Setter
-        private int count_sec_03;
-        @Getter
-        @Setter
-        private int count_sec_04;
-        @Getter
-        @Setter
-        private int count_sec_05;
-        @Getter
-        @Setter
-        private int count_sec_06;
-        @Getter
-        @Setter
-        private int count_sec_07;
-
-        // Used by Jackson during deserialization
-        @SuppressWarnings("unused")
-        public EntityCounts() {
-            this.variant_id = new ArrayList<>();
-        }
-
-        @SuppressWarnings("unused")
-        public EntityCounts(String id, int count) {
-            this.id = id;
-            this.count = count;
-            this.variant_id = new ArrayList<>();
-        }
-
-        public boolean hasCount(SECTOR ct) {
-            switch (ct) {
-                case ALL -> {
-                    if (count > 0) {
-                        return true;
-                    }
-                }
-                case ARCHIVE -> {
-                    if (count_sec_01 > 0) {
-                        return true;
-                    }
-                }
-                case LIBRARY -> {
-                    if (count_sec_02 > 0) {
-                        return true;
-                    }
-                }
-                case MONUMENTPROTECTION -> {
-                    if (count_sec_03 > 0) {
-                        return true;
-                    }
-                }
-                case RESEARCH -> {
-                    if (count_sec_04 > 0) {
-                        return true;
-                    }
+    /**
+     * Permits for concurrent requests to the DDB API, shared by the
+     * generation of all types.
+     */
+    private static synchronized Semaphore getRequests() throws IOException {
+        if (requests == null) {
+            requests = new Semaphore(Math.max(1, Configuration.get().getValueAsInt(BEAGEN_HARVEST_CONCURRENCY, 4)));
+        }
+        return requests;
+    }
+
+    /**
+     * Stage a prepared Beacon file with the content of its spool file or
+     * delta, unless it is equal to the last Beacon file of its type and
+     * sector in the database. The content is streamed from the spool file
+     * into the database, when the generation is committed.
+     *
+     * @param em Entity manager of the generation
+     * @param generation Generation to stage the Beacon file in
+     * @param file Prepared Beacon file
+     * @param resources Streams, which have to be closed after the commit
+     * @return <code>false</code> if the Beacon file was not persisted, because
+     * it is equal to the last one
+     * @throws IOException
+     */
+    private static boolean stage(EntityManager em, Generation generation, GeneratedFile file, List<AutoCloseable> resources) throws IOException {
+        final BeaconFile bf = file.getBeaconFile();
+        if (file.isEqual()) {
+            log.warn("Beacon file {}/{} generated is equal to last beacon file in database, so it was NOT written to database.", bf.getType(), bf.getSector());
+            return false;
+        }
+
+        final SpoolFile stored;
+        if (file.getDelta() != null) {
+            bf.setBase(file.getLast().getId());
+            bf.setDepth(file.getLast().getDepth() + 1);
+            stored = file.getDelta();
+        } else {
+            stored = file.getSpool();
+        }
+
+        log.info("Writing {} entities of {} to database. Beacon file size is {}", bf.getCount(), bf.getSector().getHumanName(), stored.size());
+        final InputStream content = stored.getInputStream();
+        resources.add(content);
+        bf.setContent(content, stored.size());
+        bf.setGeneration(generation.getId());
+        em.persist(bf);
+        return true;
+    }
+
+    /**
+     * Compress staged Beacon files with rendered header with Brotli and store
+     * them as variants of the Beacon files, so they can be sent to clients
+     * without compressing them on every request. The header contains the ID
+     * of the Beacon file, so they are compressed after the generation was
+     * staged, but without an open transaction. A Beacon file, whose variant
+     * could not be stored, is sent gzip compressed instead.
+     *
+     * @param generation Staged generation
+     * @param staged Staged Beacon files
+     */
+    private static void storeBrotli(Generation generation, List<GeneratedFile> staged) {
+        final List<AutoCloseable> resources = new ArrayList<>();
+        final Map<Long, SpoolFile> variants = new LinkedHashMap<>();
+        try {
+            final int quality = Configuration.get().getValueAsInt(BEAGEN_BROTLI_QUALITY, 9);
+            if (quality < 0 || staged.isEmpty()) {
+                return;
+            }
+            if (!Brotli4jLoader.isAvailable()) {
+                log.warn("Brotli is not available, so no Brotli variants of generation {} are stored. {}", generation.getId(), Brotli4jLoader.getUnavailabilityCause().getMessage());
+                return;
+            }
+
+            final Encoder.Parameters parameters = new Encoder.Parameters().setQuality(Math.min(quality, 11)).setWindow(24);
+            for (GeneratedFile file : staged) {
+                final BeaconFile bf = file.getBeaconFile();
+                final SpoolFile brotli = new SpoolFile("beagen-brotli-");
+                resources.add(brotli);
+                try (final InputStream is = new SequenceInputStream(
+                        new ByteArrayInputStream(bf.getBeaconHeaderBytes()),
+                        new GZIPInputStream(file.getSpool().getInputStream(), BUFFER_SIZE));
+                        final OutputStream os = new BrotliOutputStream(brotli.getOutputStream(), parameters, BUFFER_SIZE)) {
+                    is.transferTo(os);
+                } catch (IOException ex) {
+                    log.warn("Could not compress Beacon file {}/{} with Brotli. {}", bf.getType(), bf.getSector(), ex.getMessage());
+                    continue;
                 }
-                case MEDIA -> {
-                    if (count_sec_05 > 0) {
-                        return true;
-                    }
+                variants.put(bf.getId(), brotli);
+            }
+
+            final EntityManager em = EntityManagerUtil.getInstance().getEntityManager();
+            final EntityTransaction tx = em.getTransaction();
+            try {
+                tx.begin();
+                for (Map.Entry<Long, SpoolFile> variant : variants.entrySet()) {
+                    final BeaconFile bf = em.find(BeaconFile.class, variant.getKey());
+                    log.info("Writing Brotli variant of Beacon file {}/{} to database. Size is {}", bf.getType(), bf.getSector(), variant.getValue().size());
+                    final InputStream content = variant.getValue().getInputStream();
+                    resources.add(content);
+                    bf.setBrotliContent(content, variant.getValue().size());
                 }
-                case MUSEUM -> {
-                    if (count_sec_06 > 0) {
-                        return true;
-                    }
+                tx.commit();
+            } finally {
+                if (tx.isActive()) {
+                    tx.rollback();
                 }
-                case OTHER -> {
-                    if (count_sec_07 > 0) {
-                        return true;
+                em.close();
+            }
+        } catch (IOException | PersistenceException ex) {
+            log.warn("Could not store Brotli variants of generation {}. {}", generation.getId(), ex.getMessage());
+        } finally {
+            close(resources);
+        }
+    }
+
+    /**
+     * Check if a generated Beacon file is equal to the last one in the
+     * database by their fingerprints. Beacon files stored without fingerprint
+     * are compared line by line.
+     *
+     * @param last Last Beacon file of the same type and sector
+     * @param bf Generated Beacon file
+     * @param spool Spool file with gzip compressed content
+     * @return <code>true</code> if both have the same lines
+     * @throws IOException
+     */
+    private static boolean isEqual(BeaconFile last, BeaconFile bf, SpoolFile spool) throws IOException {
+        if (last.getFingerprint() != null && bf.getFingerprint() != null) {
+            return last.getFingerprint().equals(bf.getFingerprint());
+        }
+        return last.equals(new GZIPInputStream(spool.getInputStream(), BUFFER_SIZE));
+    }
+
+    /**
+     * Create the delta of a generated Beacon file to the last Beacon file in
+     * the database.
+     *
+     * @param last Last Beacon file of the same type and sector
+     * @param spool Spool file with gzip compressed content
+     * @return Spool file with gzip compressed delta, or null if the delta is
+     * not smaller than the content or could not be verified
+     * @throws IOException
+     */
+    private static SpoolFile createDelta(BeaconFile last, SpoolFile spool) throws IOException {
+        final SpoolFile delta = new SpoolFile("beagen-delta-");
+        try {
+            final BeaconDelta.Stats stats;
+            try (final OutputStream os = new GZIPOutputStream(delta.getOutputStream(), BUFFER_SIZE)) {
+                stats = BeaconDelta.create(last::getBody, () -> new GZIPInputStream(spool.getInputStream(), BUFFER_SIZE), os);
+            }
+            log.info("Delta of Beacon file {}/{} to Beacon file {}: {}", last.getType(), last.getSector(), last.getId(), stats);
+
+            if (delta.size() >= spool.size()) {
+                log.info("Delta of Beacon file {}/{} is not smaller than the full file, so a full snapshot is stored.", last.getType(), last.getSector());
+                delta.close();
+                return null;
+            }
+            if (!BeaconDelta.verify(last::getBody, () -> new GZIPInputStream(delta.getInputStream(), BUFFER_SIZE), () -> new GZIPInputStream(spool.getInputStream(), BUFFER_SIZE))) {
+                log.warn("Delta of Beacon file {}/{} could not be verified, so a full snapshot is stored.", last.getType(), last.getSector());
+                delta.close();
+                return null;
+            }
+            return delta;
+        } catch (IOException e) {
+            delta.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Write the GND-ID and count of one entity to the Beacon files of all
+     * sectors the entity has objects in.
+     *
+     * @param page Page of entities
+     * @param row Row of the entity in the page
+     * @param sectors Sectors to write
+     * @param outputs Streams of Beacon files per sector
+     * @param counts Count of written entities per sector
+     * @param resolved Current GND-IDs of variant IDs
+     * @param scratch Buffer for encoding counts
+     * @param index Lookup index to add the entity to, can be null
+     * @throws IOException
+     */
+    private static void writeEntity(EntityTable page, int row, SECTOR[] sectors, EnumMap<SECTOR, ? extends OutputStream> outputs, int[] counts, Map<String, String> resolved, byte[] scratch, LookupIndex.Writer index) throws IOException {
+
+        // normalize the ID only once for all sectors, DDB entities are the
+        // only ones which need a String
+        boolean normalized = false;
+        byte[] resolvedId = null;
+
+        for (SECTOR sector : sectors) {
+
+            if (page.hasCount(row, sector)) {
+
+                if (!normalized) {
+                    if (!page.hasGndId(row)) {
+                        final String variantId = page.getVariantGndId(row);
+                        if (variantId == null) {
+                            log.warn("Could not get any GND-ID of {}. That should never happen!", page.getId(row));
+                            return;
+                        }
+                        resolvedId = resolved.getOrDefault(variantId, variantId).getBytes(StandardCharsets.UTF_8);
                     }
+                    normalized = true;
                 }
-                default -> {
+
+                final OutputStream out = outputs.get(sector);
+                if (resolvedId == null) {
+                    page.writeGndId(row, out);
+                } else {
+                    out.write(resolvedId);
                 }
+                out.write('|');
+                writeInt(out, page.getCount(row, sector), scratch);
+                out.write('\n');
+                counts[sector.ordinal()]++;
             }
+        }
 
-            return false;
+        if (normalized && index != null) {
+            index.add(page, row, resolvedId);
         }
+    }
 
-        public int getCount(SECTOR ct) {
-            switch (ct) {
-                case ALL -> {
-                    return count;
-                }
-                case ARCHIVE -> {
-                    return count_sec_01;
-                }
-                case LIBRARY -> {
-                    return count_sec_02;
-                }
-                case MONUMENTPROTECTION -> {
-                    return count_sec_03;
-                }
-                case RESEARCH -> {
-                    return count_sec_04;
-                }
-                case MEDIA -> {
-                    return count_sec_05;
+    /**
+     * Write the decimal digits of a number without creating a String.
+     */
+    private static void writeInt(OutputStream out, int value, byte[] scratch) throws IOException {
+        int pos = scratch.length;
+        long v = Math.abs((long) value);
+        do {
+            scratch[--pos] = (byte) ('0' + (v % 10));
+            v /= 10;
+        } while (v > 0);
+        if (value < 0) {
+            scratch[--pos] = '-';
+        }
+        out.write(scratch, pos, scratch.length - pos);
+    }
+
+    /**
+     * Harvest all entities of a type from the DDB API page by page. The query
+     * can be split into disjoint hash partitions, whose cursor chains are
+     * walked in parallel and merged back into the order of the query (count
+     * DESC, id ASC). The next pages of every partition are fetched in advance
+     * while the current ones are processed. Each entity is handed over to the
+     * handler as soon as it has been merged and is not retained afterwards.
+     *
+     * @param type Type of entities
+     * @param handler Handler for each entity
+     * @return Count of harvested entities
+     * @throws IOException
+     */
+    private int getDataFromDdbApi(TYPE type, EntityHandler handler) throws IOException {
+
+        final int prefetch = Configuration.get().getValueAsInt(BEAGEN_HARVEST_PREFETCH, 4);
+        final int partitions = Math.max(1, Configuration.get().getValueAsInt(BEAGEN_HARVEST_PARTITIONS, 1));
+        final Semaphore requests = getRequests();
+        final long start = System.nanoTime();
+
+        final List<CursorHarvester> harvesters = new ArrayList<>();
+        try {
+            for (int i = 0; i < partitions; ++i) {
+                final String url = URL + SEARCH.get(type) + (partitions > 1 ? getPartitionFilter(i, partitions) : "");
+                harvesters.add(new CursorHarvester(type.getName().toLowerCase() + "-" + i, url, prefetch, requests));
+            }
+
+            int numFound = 0;
+            final PriorityQueue<PartitionCursor> heads = new PriorityQueue<>(partitions);
+            for (CursorHarvester harvester : harvesters) {
+                final PartitionCursor cursor = new PartitionCursor(harvester);
+                if (cursor.advance()) {
+                    heads.add(cursor);
                 }
-                case MUSEUM -> {
-                    return count_sec_06;
+                numFound += cursor.getNumFound();
+            }
+
+            int harvested = 0;
+            while (!heads.isEmpty()) {
+                final PartitionCursor cursor = heads.poll();
+                handler.handle(cursor.getPage(), cursor.getIndex(), cursor.getResolved());
+                if (++harvested % ENTITYCOUNT == 0 || harvested == numFound) {
+                    log.info("{} data processed: {}/{}", type, harvested, numFound);
                 }
-                case OTHER -> {
-                    return count_sec_07;
+                if (cursor.advance()) {
+                    heads.add(cursor);
                 }
-                default -> {
-                    return 0;
+            }
+
+            long networkMillis = 0;
+            long waitMillis = 0;
+            for (CursorHarvester harvester : harvesters) {
+                networkMillis += harvester.getNetworkMillis();
+                waitMillis += harvester.getWaitMillis();
+            }
+            final long wallMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            log.info("Harvest of {} in {} partition(s) took {} ms: {} ms on network, {} ms waiting for pages, {} ms processing pages.",
+                    type, partitions, wallMillis, networkMillis, waitMillis, wallMillis - waitMillis);
+
+            return harvested;
+        } finally {
+            for (CursorHarvester harvester : harvesters) {
+                harvester.close();
+            }
+        }
+    }
+
+    /**
+     * Filter query to restrict a search to one of several disjoint partitions
+     * by the hash of the entity ID.
+     *
+     * @param partition Number of partition (0 based)
+     * @param partitions Count of partitions
+     * @return Filter query parameter
+     */
+    private static String getPartitionFilter(int partition, int partitions) {
+        return "&fq=" + URLEncoder.encode("{!hash workers=" + partitions + " worker=" + partition + " partitionKeys=id}", StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Beacon file generated into a spool file, waiting to be published
+     */
+    private static class GeneratedFile implements AutoCloseable {
+
+        private final BeaconFile beaconFile;
+        private final SpoolFile spool;
+        // last Beacon file of the same type and sector, when it was prepared
+        private BeaconFile last;
+        private boolean prepared;
+        private boolean equal;
+        private SpoolFile delta;
+
+        private GeneratedFile(BeaconFile beaconFile, SpoolFile spool) {
+            this.beaconFile = beaconFile;
+            this.spool = spool;
+        }
+
+        public BeaconFile getBeaconFile() {
+            return beaconFile;
+        }
+
+        public SpoolFile getSpool() {
+            return spool;
+        }
+
+        public BeaconFile getLast() {
+            return last;
+        }
+
+        public boolean isEqual() {
+            return equal;
+        }
+
+        public SpoolFile getDelta() {
+            return delta;
+        }
+
+        private void prepare(BeaconFile last, boolean equal, SpoolFile delta) {
+            if (this.delta != null) {
+                this.delta.close();
+            }
+            this.last = last;
+            this.equal = equal;
+            this.delta = delta;
+            this.prepared = true;
+        }
+
+        /**
+         * @param current Current last Beacon file of the same type and sector
+         * @return <code>true</code> if it was prepared with the same last
+         * Beacon file
+         */
+        private boolean isPreparedFor(BeaconFile current) {
+            return prepared && (last == null ? current == null : current != null && last.getId().equals(current.getId()));
+        }
+
+        @Override
+        public void close() {
+            if (delta != null) {
+                delta.close();
+            }
+            spool.close();
+        }
+    }
+
+    /**
+     * Consumer of one harvested entity
+     */
+    @FunctionalInterface
+    private interface EntityHandler {
+
+        void handle(EntityTable page, int row, Map<String, String> resolved) throws IOException;
+    }
+
+    /**
+     * Position in the cursor chain of one partition. Cursors are ordered by
+     * the entity they point to, in the same order as the query (count DESC, id
+     * ASC).
+     */
+    private static class PartitionCursor implements Comparable<PartitionCursor> {
+
+        private final CursorHarvester harvester;
+        private final EntityTable page = new EntityTable(ENTITYCOUNT);
+        private Map<String, String> resolved = Map.of();
+        private int index = -1;
+        private int numFound;
+
+        private PartitionCursor(CursorHarvester harvester) {
+            this.harvester = harvester;
+        }
+
+        /**
+         * Move to the next entity, loading the next page if needed. The
+         * GND-IDs of all DDB entities of a page are resolved at once.
+         *
+         * @return <code>false</code> if the partition is exhausted
+         * @throws IOException
+         */
+        private boolean advance() throws IOException {
+            while (++index >= page.size()) {
+                final CursorHarvester.Page next = harvester.next();
+                page.clear();
+                if (next == null) {
+                    return false;
                 }
+                numFound = next.getNumFound();
+                page.appendDocs(next.getBody());
+                resolved = EntityFacts.getGndIds(page.getVariantGndIds());
+                index = -1;
             }
+            return true;
+        }
+
+        private EntityTable getPage() {
+            return page;
+        }
+
+        private int getIndex() {
+            return index;
+        }
+
+        private Map<String, String> getResolved() {
+            return resolved;
+        }
+
+        private int getNumFound() {
+            return numFound;
+        }
+
+        @Override
+        public int compareTo(PartitionCursor o) {
+            return page.compare(index, o.page, o.index);
         }
     }
 }
@@ -0,0 +1,141 @@
+/* 
+ * Copyright 2019-2026 Michael Büchner, Deutsche Digitale Bibliothek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.ddb.labs.beagen.backend.jobs;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Small executor for a graph of tasks. Every task starts as soon as all tasks
+ * it depends on have finished, and at most a fixed count of tasks runs at the
+ * same time. If a task fails, all tasks depending on it are skipped.
+ *
+ * @author Michael Büchner
+ */
+@Slf4j
+public class JobGraph {
+
+    private final int parallelism;
+    private final Map<String, Node> nodes = new LinkedHashMap<>();
+
+    /**
+     * @param parallelism Maximum count of tasks running at the same time
+     */
+    public JobGraph(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * Add a task to the graph.
+     *
+     * @param name Unique name of the task
+     * @param task Task
+     * @param dependencies Names of tasks which have to be finished before,
+     * these have to be added first
+     */
+    public void add(String name, Task task, String... dependencies) {
+        if (nodes.containsKey(name)) {
+            throw new IllegalArgumentException("Task " + name + " already exists");
+        }
+        for (String dependency : dependencies) {
+            if (!nodes.containsKey(dependency)) {
+                throw new IllegalArgumentException("Unknown dependency " + dependency + " of task " + name);
+            }
+        }
+        nodes.put(name, new Node(task, dependencies));
+    }
+
+    /**
+     * Run all tasks and wait until they are finished.
+     *
+     * @return <code>true</code> if all tasks succeeded
+     */
+    public boolean run() {
+        final AtomicInteger counter = new AtomicInteger();
+        final ExecutorService executor = Executors.newFixedThreadPool(parallelism, r -> {
+            final Thread t = new Thread(r, "jobgraph-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+
+        try {
+            final Map<String, CompletableFuture<Void>> futures = new LinkedHashMap<>();
+            for (Map.Entry<String, Node> entry : nodes.entrySet()) {
+                final String name = entry.getKey();
+                final Node node = entry.getValue();
+
+                final List<CompletableFuture<Void>> dependencies = new ArrayList<>();
+                for (String dependency : node.dependencies) {
+                    dependencies.add(futures.get(dependency));
+                }
+
+                futures.put(name, CompletableFuture
+                        .allOf(dependencies.toArray(CompletableFuture[]::new))
+                        .thenRunAsync(() -> {
+                            final long start = System.currentTimeMillis();
+                            log.info("Task {} started.", name);
+                            try {
+                                node.task.run();
+                            } catch (Exception e) {
+                                throw new CompletionException(e);
+                            }
+                            log.info("Task {} finished after {} ms.", name, System.currentTimeMillis() - start);
+                        }, executor));
+            }
+
+            boolean success = true;
+            for (Map.Entry<String, CompletableFuture<Void>> future : futures.entrySet()) {
+                try {
+                    future.getValue().join();
+                } catch (CompletionException e) {
+                    success = false;
+                    log.error("Task {} failed or was skipped. {}", future.getKey(), e.getCause() != null ? e.getCause().getMessage() : e.getMessage());
+                }
+            }
+            return success;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Task of a job graph
+     */
+    @FunctionalInterface
+    public interface Task {
+
+        void run() throws Exception;
+    }
+
+    private static class Node {
+
+        private final Task task;
+        private final String[] dependencies;
+
+        private Node(Task task, String[] dependencies) {
+            this.task = task;
+            this.dependencies = dependencies;
+        }
+    }
+}
@@ -0,0 +1,232 @@
+/* 
+ * Copyright 2019-2026 Michael Büchner, Deutsche Digitale Bibliothek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.ddb.labs.beagen.backend.jobs;
+
+import de.ddb.labs.beagen.backend.BeaconFileController;
+import de.ddb.labs.beagen.backend.LatestBeaconFiles;
+import de.ddb.labs.beagen.backend.data.SECTOR;
+import de.ddb.labs.beagen.backend.data.TYPE;
+import de.ddb.labs.beagen.backend.helper.BlobStore;
+import de.ddb.labs.beagen.backend.helper.BlobStores;
+import de.ddb.labs.beagen.backend.helper.Configuration;
+import de.ddb.labs.beagen.backend.helper.EntityManagerUtil;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityTransaction;
+import lombok.extern.slf4j.Slf4j;
+import org.quartz.DisallowConcurrentExecution;
+import org.quartz.Job;
+import org.quartz.JobExecutionContext;
+import org.quartz.JobExecutionException;
+
+/**
+ * Deletes old Beacon files according to the retention policy and compacts the
+ * database afterwards, if any were deleted. Generations are not published
+ * while the job runs.
+ * <p>
+ * All Beacon files of the last <code>beagen.retention.all</code> months are
+ * kept, of the <code>beagen.retention.monthly</code> months before only the
+ * latest one of each month and of all older ones only the latest one of each
+ * year. The latest Beacon file of every type and sector and the Beacon files
+ * a kept delta is based on are never deleted.
+ *
+ * @author Michael Büchner
+ */
+@Slf4j
+@DisallowConcurrentExecution
+public class MaintenanceJob implements Job {
+
+    // months all Beacon files are kept (-1 = keep all Beacon files)
+    private static final String BEAGEN_RETENTION_ALL = "beagen.retention.all";
+    // months one Beacon file per month is kept after that
+    private static final String BEAGEN_RETENTION_MONTHLY = "beagen.retention.monthly";
+    // compact the database after deleting Beacon files
+    private static final String BEAGEN_MAINTENANCE_COMPACT = "beagen.maintenance.compact";
+    // count of IDs per delete statement
+    private static final int BATCH_SIZE = 500;
+
+    @Override
+    public void execute(JobExecutionContext context) throws JobExecutionException {
+        // a generation, which is published meanwhile, could reference content
+        // in the blob store, which is deleted here, before it is committed
+        synchronized (BeaconJob.PUBLISH_LOCK) {
+            maintain();
+        }
+    }
+
+    private static void maintain() throws JobExecutionException {
+        try {
+            final int allMonths = Configuration.get().getValueAsInt(BEAGEN_RETENTION_ALL, -1);
+            final int monthlyMonths = Configuration.get().getValueAsInt(BEAGEN_RETENTION_MONTHLY, 0);
+            final boolean compact = Boolean.parseBoolean(Configuration.get().getValue(BEAGEN_MAINTENANCE_COMPACT));
+
+            final long sizeBefore = EntityManagerUtil.getInstance().getDatabaseSize();
+
+            int deleted = 0;
+            if (allMonths >= 0) {
+                final List<Long> ids = getExpiredBeaconFiles(LocalDate.now(ZoneOffset.UTC), allMonths, Math.max(0, monthlyMonths));
+                long blobBytes = 0;
+                for (int i = 0; i < ids.size(); i += BATCH_SIZE) {
+                    blobBytes += delete(ids.subList(i, Math.min(ids.size(), i + BATCH_SIZE)));
+                }
+                deleted = ids.size();
+                log.info("Deleted {} Beacon files by retention policy and {} bytes of their content in the blob store.", ids.size(), blobBytes);
+            }
+
+            // the database is closed while it is compacted, so only if there
+            // is something to reclaim
+            if (compact && deleted > 0) {
+                log.info("Compacting database...");
+                EntityManagerUtil.getInstance().compact();
+                LatestBeaconFiles.refresh();
+                final long sizeAfter = EntityManagerUtil.getInstance().getDatabaseSize();
+                log.info("Compacted database from {} to {} bytes, {} bytes reclaimed.", sizeBefore, sizeAfter, sizeBefore - sizeAfter);
+            }
+        } catch (Exception ex) {
+            log.error("Maintenance failed. {}", ex.getMessage(), ex);
+            throw new JobExecutionException(ex);
+        }
+    }
+
+    /**
+     * Get the IDs of the Beacon files which are not kept by the retention
+     * policy.
+     *
+     * @param today Current day
+     * @param allMonths Months all Beacon files are kept
+     * @param monthlyMonths Months one Beacon file per month is kept after that
+     * @return IDs of Beacon files to delete
+     */
+    private static List<Long> getExpiredBeaconFiles(LocalDate today, int allMonths, int monthlyMonths) {
+        final LocalDate allLimit = today.minusMonths(allMonths);
+        final LocalDate monthlyLimit = allLimit.minusMonths(monthlyMonths);
+
+        final Map<Long, Long> bases = new HashMap<>();
+        final Set<Long> kept = new HashSet<>();
+        final List<Long> all = new ArrayList<>();
+        // latest Beacon file of a type, sector and period (month or year)
+        final Set<String> periods = new HashSet<>();
+
+        final EntityManager em = EntityManagerUtil.getInstance().getEntityManager();
+        try {
+            final List<Object[]> rows = em.createQuery("SELECT f.id, f.type, f.sector, f.created, f.base FROM BeaconFile AS f WHERE " + BeaconFileController.isPublished("f") + " ORDER BY f.created DESC, f.id DESC", Object[].class).getResultList();
+            for (Object[] row : rows) {
+                final Long id = (Long) row[0];
+                final TYPE type = (TYPE) row[1];
+                final SECTOR sector = (SECTOR) row[2];
+                final LocalDate created = ((Date) row[3]).toInstant().atZone(ZoneOffset.UTC).toLocalDate();
+                all.add(id);
+                if (row[4] != null) {
+                    bases.put(id, (Long) row[4]);
+                }
+
+                final String period;
+                if (!created.isBefore(allLimit)) {
+                    period = null;
+                } else if (!created.isBefore(monthlyLimit)) {
+                    period = created.getYear() + "-" + created.getMonthValue();
+                } else {
+                    period = Integer.toString(created.getYear());
+                }
+
+                // the first Beacon file of a type and sector is the latest one
+                final boolean latest = periods.add(type + "/" + sector);
+                if (latest || period == null || periods.add(type + "/" + sector + "/" + period)) {
+                    kept.add(id);
+                }
+            }
+        } finally {
+            em.close();
+        }
+
+        // keep the chain of every kept delta
+        for (Long id : new ArrayList<>(kept)) {
+            Long base = bases.get(id);
+            while (base != null && kept.add(base)) {
+                base = bases.get(base);
+            }
+        }
+
+        final List<Long> expired = new ArrayList<>();
+        for (Long id : all) {
+            if (!kept.contains(id)) {
+                expired.add(id);
+            }
+        }
+        return expired;
+    }
+
+    /**
+     * Delete Beacon files and their content in the blob store, if no other
+     * Beacon file has the same content.
+     *
+     * @param ids IDs of the Beacon files
+     * @return Bytes deleted in the blob store
+     * @throws IOException
+     */
+    private static long delete(List<Long> ids) throws IOException {
+        final Set<String> keys = new HashSet<>();
+        final EntityManager em = EntityManagerUtil.getInstance().getEntityManager();
+        final EntityTransaction tx = em.getTransaction();
+        try {
+            tx.begin();
+            for (Object[] row : em.createQuery("SELECT f.blobHash, f.brotliHash FROM BeaconFile AS f WHERE f.id IN :ids", Object[].class).setParameter("ids", ids).getResultList()) {
+                keys.add((String) row[0]);
+                keys.add((String) row[1]);
+            }
+            keys.remove(null);
+            em.createQuery("DELETE FROM BeaconFile AS f WHERE f.id IN :ids").setParameter("ids", ids).executeUpdate();
+            tx.commit();
+
+            final BlobStore store = BlobStores.getInstance();
+            if (store == null) {
+                if (!keys.isEmpty()) {
+                    log.warn("{} contents of deleted Beacon files are in a blob store, which is not configured anymore.", keys.size());
+                }
+                return 0;
+            }
+
+            long bytes = 0;
+            for (String key : keys) {
+                final long count = em.createQuery("SELECT COUNT(f) FROM BeaconFile AS f WHERE f.blobHash = :key OR f.brotliHash = :key", Long.class).setParameter("key", key).getSingleResult();
+                if (count == 0) {
+                    try {
+                        bytes += store.size(key);
+                    } catch (IOException e) {
+                        log.warn("Content {} is not in the blob store. {}", key, e.getMessage());
+                        continue;
+                    }
+                    store.delete(key);
+                }
+            }
+            return bytes;
+        } finally {
+            if (tx.isActive()) {
+                tx.rollback();
+            }
+            em.close();
+        }
+    }
+}